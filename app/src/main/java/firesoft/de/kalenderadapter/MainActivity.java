@@ -49,6 +49,8 @@ import com.github.zagum.switchicon.SwitchIconView;
 import java.text.ParseException;
 import java.util.ArrayList;
 
+import firesoft.de.kalenderadapter.data.CustomCalendar;
+import firesoft.de.kalenderadapter.data.FeedConfig;
 import firesoft.de.kalenderadapter.data.ServerParameter;
 import firesoft.de.kalenderadapter.fragments.TimePickerFragment;
 import firesoft.de.kalenderadapter.interfaces.IErrorCallback;
@@ -74,6 +76,8 @@ public class MainActivity extends AppCompatActivity implements IErrorCallback {
 
     private boolean blockServiceStart;
 
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+
 
     //=======================================================
     //=====================OVERRIDES=========================
@@ -319,6 +323,7 @@ public class MainActivity extends AppCompatActivity implements IErrorCallback {
                 pManager.reset();
                 pManager.save();
                 fillFromPreferences();
+                populateFeedSpinner();
             }
         });
 
@@ -355,6 +360,26 @@ public class MainActivity extends AppCompatActivity implements IErrorCallback {
             }
         });
 
+        // Bedingungen für die Hintergrundsynchronisation. Die geplanten Jobs müssen neu geplant werden, damit die Änderung wirkt.
+        // Es wird nur auf Klicks reagiert, damit das Setzen der gespeicherten Werte den Service nicht neu startet.
+        this.findViewById(R.id.cB_sync_unmetered_only).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                pManager.setSyncUnmeteredOnly(((CheckBox) view).isChecked());
+                pManager.save();
+                restartService();
+            }
+        });
+
+        this.findViewById(R.id.cB_sync_charging_only).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                pManager.setSyncChargingOnly(((CheckBox) view).isChecked());
+                pManager.save();
+                restartService();
+            }
+        });
+
         // Synchronisationszeitpunkt
         final Button etServiceSyncFrom = this.findViewById(R.id.service_sync_from);
         etServiceSyncFrom.setOnClickListener(new View.OnClickListener() {
@@ -373,6 +398,21 @@ public class MainActivity extends AppCompatActivity implements IErrorCallback {
             }
         });
 
+        // Weitere ICS Dateien hinzufügen und entfernen
+        this.findViewById(R.id.bt_add_feed).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                showAddFeedDialog();
+            }
+        });
+
+        this.findViewById(R.id.bt_remove_feed).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                removeSelectedFeed();
+            }
+        });
+
         // Button für die erneute Aufforderung zur Rechtevergabe
         ((Button) this.findViewById(R.id.bt_showRightsManagment)).setOnClickListener(new View.OnClickListener() {
             @Override
@@ -449,6 +489,120 @@ public class MainActivity extends AppCompatActivity implements IErrorCallback {
             spinner.setSelection(availableCalendars.indexOf(calendarName));
         }
 
+        // Die Anzeige der weiteren ICS Dateien benötigt die Namen der Kalender
+        populateFeedSpinner();
+
+    }
+
+    /**
+     * Schreibt die weiteren ICS Dateien mit ihrem Zielkalender in den Spinner
+     */
+    private void populateFeedSpinner() {
+
+        ArrayList<String> entries = new ArrayList<>();
+
+        for (FeedConfig feed : pManager.getAdditionalFeeds()
+                ) {
+            CustomCalendar calendar = cManager.getCalendar(feed.getCalendarId());
+            entries.add(feed.getUrl() + " - " + (calendar != null ? calendar.getDisplayName() : String.valueOf(feed.getCalendarId())));
+        }
+
+        Spinner spinner = this.findViewById(R.id.spinner_additional_feeds);
+
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(getApplicationContext(), R.layout.custom_spinner_item, entries);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinner.setAdapter(adapter);
+
+        this.findViewById(R.id.bt_remove_feed).setEnabled(entries.size() > 0);
+    }
+
+    /**
+     * Zeigt einen Dialog zum Hinzufügen einer weiteren ICS Datei an. Jede Datei benötigt einen eigenen Zielkalender.
+     */
+    private void showAddFeedDialog() {
+
+        ArrayList<String> availableCalendars = cManager.getCalendars();
+
+        if (availableCalendars == null) {
+            return;
+        }
+
+        final Dialog feedDialog = new Dialog(MainActivity.this);
+
+        feedDialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
+        feedDialog.setCancelable(true);
+        feedDialog.setContentView(R.layout.layout_feed_dialog);
+
+        final Spinner spinner = feedDialog.findViewById(R.id.spinner_feed_calendar);
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(getApplicationContext(), R.layout.custom_spinner_item, availableCalendars);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinner.setAdapter(adapter);
+
+        feedDialog.findViewById(R.id.bt_yes).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+
+                String url = ((EditText) feedDialog.findViewById(R.id.eT_feed_url)).getText().toString().trim();
+                String user = ((EditText) feedDialog.findViewById(R.id.eT_feed_user)).getText().toString();
+                String password = ((EditText) feedDialog.findViewById(R.id.et_feed_pw)).getText().toString();
+                CustomCalendar calendar = spinner.getSelectedItem() != null ? cManager.getCalendar(spinner.getSelectedItem().toString()) : null;
+
+                TextView error = feedDialog.findViewById(R.id.tV_feed_error);
+
+                if (url.equals("") || calendar == null) {
+                    error.setText(R.string.error_fields_not_filled);
+                    error.setVisibility(View.VISIBLE);
+                    return;
+                }
+
+                // Die Haupt-URL wird in den aktiven Kalender importiert. Jede weitere Datei muss einen anderen Kalender verwenden.
+                ArrayList<FeedConfig> feeds = new ArrayList<>(pManager.getAdditionalFeeds());
+                feeds.add(new FeedConfig(url, user, password, calendar.getId()));
+
+                ArrayList<FeedConfig> check = new ArrayList<>(feeds);
+                check.add(new FeedConfig(pManager.getUrl(), null, null, pManager.getActiveCalendarId()));
+
+                if (FeedConfig.findDuplicateCalendar(check) != -1) {
+                    error.setText(R.string.error_feed_calendar_in_use);
+                    error.setVisibility(View.VISIBLE);
+                    return;
+                }
+
+                pManager.setAdditionalFeeds(feeds);
+                pManager.save();
+
+                populateFeedSpinner();
+                feedDialog.dismiss();
+            }
+        });
+
+        feedDialog.findViewById(R.id.bt_no).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                feedDialog.dismiss();
+            }
+        });
+
+        feedDialog.show();
+    }
+
+    /**
+     * Entfernt die im Spinner ausgewählte ICS Datei. Die bereits importierten Einträge bleiben im Kalender erhalten.
+     */
+    private void removeSelectedFeed() {
+
+        int position = ((Spinner) this.findViewById(R.id.spinner_additional_feeds)).getSelectedItemPosition();
+        ArrayList<FeedConfig> feeds = new ArrayList<>(pManager.getAdditionalFeeds());
+
+        if (position < 0 || position >= feeds.size()) {
+            return;
+        }
+
+        feeds.remove(position);
+        pManager.setAdditionalFeeds(feeds);
+        pManager.save();
+
+        populateFeedSpinner();
     }
 
     /**
@@ -519,6 +673,18 @@ public class MainActivity extends AppCompatActivity implements IErrorCallback {
 
         ((CheckBox) this.findViewById(R.id.cB_replace_existing)).setChecked(pManager.isReplaceExistingActivated());
 
+        ((CheckBox) this.findViewById(R.id.cB_spool_feeds)).setChecked(pManager.isSpoolFeedsActivated());
+
+        ((CheckBox) this.findViewById(R.id.cB_sync_unmetered_only)).setChecked(pManager.isSyncUnmeteredOnly());
+        ((CheckBox) this.findViewById(R.id.cB_sync_charging_only)).setChecked(pManager.isSyncChargingOnly());
+        ((CheckBox) this.findViewById(R.id.cB_adaptive_sync)).setChecked(pManager.isAdaptiveSyncActivated());
+
+        ((EditText) this.findViewById(R.id.eT_sync_time_budget)).setText(String.valueOf(pManager.getSyncTimeBudget() / MILLIS_PER_MINUTE));
+
+        ((EditText) this.findViewById(R.id.eT_sync_past_days)).setText(String.valueOf(pManager.getSyncPastDays()));
+
+        ((EditText) this.findViewById(R.id.eT_sync_future_months)).setText(String.valueOf(pManager.getSyncFutureMonths()));
+
     }
 
     /**
@@ -536,7 +702,7 @@ public class MainActivity extends AppCompatActivity implements IErrorCallback {
 
         // Sync Einstellungen
         pManager.setSyncDisabled(!((Switch) this.findViewById(R.id.switch_service)).isChecked());
-        // Sync Intervall und Startpunkt werden über die TextChange Events gespeichert, da bei Änderungen dieser Eigenschaften auch der Hintergrundservice angefasst werden muss
+        // Sync Intervall, Startpunkt und die Bedingungen (WLAN, Laden) werden über die Listener gespeichert, da bei Änderungen dieser Eigenschaften auch der Hintergrundservice angefasst werden muss
 
         // Erinnerungseinstellungen
         pManager.setReminder(((CheckBox) this.findViewById(R.id.cB_set_reminder)).isChecked());
@@ -544,6 +710,19 @@ public class MainActivity extends AppCompatActivity implements IErrorCallback {
 
         pManager.setReplaceExisting(((CheckBox) this.findViewById(R.id.cB_replace_existing)).isChecked());
 
+        pManager.setSpoolFeeds(((CheckBox) this.findViewById(R.id.cB_spool_feeds)).isChecked());
+
+        // Das angepasste Intervall wird bei jedem Lauf neu bestimmt, der Service muss daher nicht neu gestartet werden
+        pManager.setAdaptiveSync(((CheckBox) this.findViewById(R.id.cB_adaptive_sync)).isChecked());
+
+        // Zeitbudget wird in Minuten eingegeben
+        int budget = readNumber((EditText) this.findViewById(R.id.eT_sync_time_budget), (int) (pManager.getSyncTimeBudget() / MILLIS_PER_MINUTE));
+        pManager.setSyncTimeBudget(budget * MILLIS_PER_MINUTE);
+
+        // Zeitfenster des Abgleichs (0 = ohne Begrenzung)
+        pManager.setSyncPastDays(readNumber((EditText) this.findViewById(R.id.eT_sync_past_days), pManager.getSyncPastDays()));
+        pManager.setSyncFutureMonths(readNumber((EditText) this.findViewById(R.id.eT_sync_future_months), pManager.getSyncFutureMonths()));
+
         // Die Id des aktiven Kalenders wird über die spinnerSelectionChanged Methode automatisch auf dem aktuellen Stand gehalten
         pManager.save();
     }
@@ -552,6 +731,19 @@ public class MainActivity extends AppCompatActivity implements IErrorCallback {
     //===================HILFSMETHODEN=======================
     //=======================================================
 
+    /**
+     * Liest eine nicht negative Zahl aus einem Eingabefeld
+     * @param fallback Wert der bei einer leeren oder ungültigen Eingabe verwendet wird
+     */
+    private int readNumber(EditText editText, int fallback) {
+        try {
+            int value = Integer.parseInt(editText.getText().toString().trim());
+            return value >= 0 ? value : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
     /**
      * Interfacemethode um Fehlermeldungen aus den tieferen Klassen zum Benutzer durchzustellen
      * @param message Nachricht die angezeigt werden soll
@@ -16,10 +16,8 @@
 package firesoft.de.kalenderadapter.data;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
+
+import firesoft.de.kalenderadapter.utility.IcsDateParser;
 
 public class CustomCalendarEntry {
 
@@ -45,6 +43,25 @@ public class CustomCalendarEntry {
 
     private String timezone;
 
+    // UID des Events aus der ICS Datei. Bei aus dem Kalender gelesenen Einträgen der Inhalt der Spalte UID_2445.
+    private String uid;
+
+    // RECURRENCE-ID des Events. Ist gesetzt, wenn ein einzelner Termin einer Serie abweicht (gleiche UID wie die Serie).
+    private String recurrenceId;
+
+    // SEQUENCE des Events. Wird bei jeder Änderung durch den Organisator erhöht.
+    private int sequence;
+
+    // LAST-MODIFIED des Events in Millisekunden seit Epoch. 0 = unbekannt
+    private long lastModified;
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     //=======================================================
     //======================ENUM's==========================
     //=======================================================
@@ -66,19 +83,17 @@ public class CustomCalendarEntry {
      * Erzeugt eine neue Instanz
      * @param entryID ID des Eintrags
      * @param title Titel des Events
-     * @param startTime Anfangszeit
-     * @param endTime Endzeit
+     * @param startTime Anfangszeit im ICS Format (yyyyMMdd'T'HHmmss, optional mit "Z" für UTC, oder yyyyMMdd)
+     * @param endTime Endzeit im ICS Format
      * @param description Beschreibung
      * @param entryState Status des Events
      * @param location Ort an dem das Event stattfindet
      * @param category Kategorie
+     * @param timezone Zeitzone in der Start- und Endzeit angegeben sind
      * @throws ParseException Sollte es beim umwandeln der Start- und Endzeit in Unix-Zeit zu einem Fehler kommen, wird eine ParseException geworfen.
      */
     public CustomCalendarEntry(int entryID, String title, String startTime, String endTime, String description, EntryState entryState, String location, String category, String timezone) throws ParseException{
 
-        Calendar calendar;
-        Date date;
-
         this.entryID = entryID;
         this.title = title;
         this.description = description;
@@ -88,17 +103,8 @@ public class CustomCalendarEntry {
         this.timezone = timezone;
 
         // Start und Endzeit parsen
-        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss", Locale.GERMANY);
-
-        date = format.parse(startTime);
-        calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        startMillis = calendar.getTimeInMillis();
-
-        date  = format.parse(endTime);
-        calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        endMillis = calendar.getTimeInMillis();
+        startMillis = IcsDateParser.parse(startTime, timezone);
+        endMillis = IcsDateParser.parse(endTime, timezone);
 
     }
 
@@ -115,12 +121,74 @@ public class CustomCalendarEntry {
      */
     public boolean equals(CustomCalendarEntry candidate) {
 
-        boolean checkresult_1 = (this.title.equals(candidate.title));
-        boolean checkresult_2 = (this.title.equals(candidate.title));
-        boolean checkresult_3 = (this.startMillis == candidate.startMillis);
-        boolean checkresult_4 = (this.endMillis == candidate.endMillis);
+        if (candidate == null) {
+            return false;
+        }
+
+        boolean checkresult_1 = (this.title == null ? candidate.title == null : this.title.equals(candidate.title));
+        boolean checkresult_2 = (this.startMillis == candidate.startMillis);
+        boolean checkresult_3 = (this.endMillis == candidate.endMillis);
+
+        return (checkresult_1 && checkresult_2 && checkresult_3);
+    }
+
+    /**
+     * Prüft, ob ein eingegebener Eintrag in Datum und Titel übereinstimmt. Wird u.a. von HashMap und HashSet verwendet.
+     */
+    @Override
+    public boolean equals(Object candidate) {
+        return candidate instanceof CustomCalendarEntry && equals((CustomCalendarEntry) candidate);
+    }
+
+    /**
+     * Berechnet den Hashwert aus den Feldern die auch in equals() verglichen werden (Titel, Start- und Endzeit)
+     */
+    @Override
+    public int hashCode() {
+        int result = title != null ? title.hashCode() : 0;
+        result = 31 * result + (int) (startMillis ^ (startMillis >>> 32));
+        result = 31 * result + (int) (endMillis ^ (endMillis >>> 32));
+        return result;
+    }
 
-        return (checkresult_1 && checkresult_2 && checkresult_3 && checkresult_4);
+    /**
+     * Berechnet einen Hashwert (64 Bit FNV-1a) über alle Felder die in den Kalender geschrieben werden. Wird genutzt um zu entscheiden, ob ein bestehender Eintrag aktualisiert werden muss.
+     * Null wird wie ein leerer Text behandelt, da der CalendarProvider leere Werte teilweise als null speichert.
+     */
+    public long getContentHash() {
+        long hash = FNV_OFFSET_BASIS;
+        hash = hashText(hash, title);
+        hash = hashText(hash, description);
+        hash = hashText(hash, location);
+        hash = hashText(hash, timezone);
+        hash = hashLong(hash, startMillis);
+        hash = hashLong(hash, endMillis);
+        return hash;
+    }
+
+    /**
+     * Prüft anhand von SEQUENCE und LAST-MODIFIED, ob dieser Eintrag eine neuere Version des Kandidaten ist
+     * @return true, falls dieser Eintrag neuer ist. Bei gleichem Stand false.
+     */
+    public boolean isNewerThan(CustomCalendarEntry candidate) {
+        if (sequence != candidate.sequence) {
+            return sequence > candidate.sequence;
+        }
+        return lastModified > candidate.lastModified;
+    }
+
+    /**
+     * Gibt den Schlüssel aus, über den ein Event beim Abgleich wiedererkannt wird. Dieser wird auch in der Spalte UID_2445 gespeichert.
+     * @return UID bzw. UID und RECURRENCE-ID. Hat das Event keine UID, wird ein Schlüssel aus Start-, Endzeit und Titel gebildet.
+     */
+    public String getSyncKey() {
+        if (uid == null) {
+            return "~" + startMillis + "~" + endMillis + "~" + title;
+        }
+        if (recurrenceId == null) {
+            return uid;
+        }
+        return uid + "/" + recurrenceId;
     }
 
     /**
@@ -147,7 +215,7 @@ public class CustomCalendarEntry {
 
     /**
      * Erzeugt auf Basis eines Strings mit ICS Daten einen neuen CalendarEntry
-     * @param icsString String mit den Daten der ICS Datei. Der String darf nur einen Eintrag mit oder ohne BEGIN:VEVENT / END:VEVENT enthalten!
+     * @param icsString String mit den Daten der ICS Datei. Der String darf nur einen Eintrag mit oder ohne BEGIN:VEVENT / END:VEVENT enthalten! Gefaltete Zeilen müssen bereits entfaltet sein (siehe IcsLineReader).
      * @param calendarID Die ID des Kalenders, dem der Eintrag zugeordnet wird.
      * @return Null, falls der Eintrag nicht erfolgreich erzeugt werden konnte (es fehlen Titel, Zustand, Start- und Endzeit)
      * @throws ParseException Falls es beim Erstellen des Eintrags zu Fehlern beim Parsen der Zeiten kommt, wird dieser Fehler aus dem Konstruktor weitergeleitet.
@@ -164,88 +232,109 @@ public class CustomCalendarEntry {
         String startTime = null;
         String endTime = null;
         String timezone = null;
+        String uid = null;
+        String recurrenceId = null;
+        int sequence = 0;
+        long lastModified = 0;
 
-        String[] elements = icsString.split("\n");
+        int length = icsString.length();
+        int lineStart = 0;
 
-        for (String line: elements
-             ) {
+        // Die Zeilen werden anhand ihrer Position im String durchlaufen. Es wird nur für die Werte die tatsächlich übernommen werden ein neuer String erzeugt.
+        while (lineStart < length) {
 
-            // Prüfen, ob das erste Element der ICS Datei heruntergeladen wurde.
-            if (line.equals("BEGIN:VCALENDAR")) {
-                return null;
+            int nextLine = icsString.indexOf('\n', lineStart);
+            if (nextLine < 0) {
+                nextLine = length;
             }
 
-            if (!line.equals("")) {
-                String argument = line.split(":",2)[0];
-                argument = argument.replace("\t", "");
-                String value = line.split(":",2)[1];
-
-                switch (argument) {
-
-                    case "SUMMARY":
-                        title = value;
-                        break;
-
-                    case "STATUS":
-                        switch (value) {
-                            case "CONFIRMED":
-                                entryState = EntryState.CONFIRMED;
-                                break;
-                            case "TENTATIVE":
-                                entryState = EntryState.OPEN;
-                                break;
-                            case "CANCELED":
-                                entryState = EntryState.CANCELED;
-                                break;
-                        }
-                        break;
-
-                    case "CATEGORIES":
-
-                        if (value.contains("\\,")) {
-                            category = value.replace("\\,", "-");
-                            description = value.replace("\\,", "-");
-                        }
-                        else {
-                            category = value;
-                            description = value;
-                        }
-
-                        break;
-
-                    case "LOCATION":
-                        location = value;
-                        break;
-
-                    default:
-
-                        // DTSTART;TZID=Europe/Berlin:20180417T190000
-                        // DTSTART;VALUE=DATE:20180517
-                        if (argument.contains("DTSTART")) {
-
-                            if (argument.contains("TZID")) {
-                                startTime = value;
-                                String timezoneRaw = argument.split(";")[1];
-                                timezone = timezoneRaw.split("=")[1];
-                            }
-                            else if (argument.contains("VALUE=")) {
-                                startTime = value + "T000000";
-                            }
-
-                        }
-                        else if (argument.contains("DTEND")) {
-                            if (argument.contains("TZID")) {
-                                endTime = value;
-                            }
-                            else if (argument.contains("VALUE=")) {
-                                endTime = value + "T000000";
-                            }
-                        }
-                }
+            // Ein CR am Zeilenende gehört nicht zum Wert (CRLF Zeilenumbrüche)
+            int lineEnd = nextLine;
+            if (lineEnd > lineStart && icsString.charAt(lineEnd - 1) == '\r') {
+                lineEnd--;
             }
 
+            int nameStart = lineStart;
 
+            // Position des Trenners zwischen Property (inkl. Parameter) und Wert suchen. Zeilen ohne Trenner werden übersprungen.
+            int separator = findValueSeparator(icsString, nameStart, lineEnd);
 
+            if (separator > nameStart) {
+
+                // Der Name der Property endet am ersten Semikolon (Beginn der Parameter) oder am Trenner
+                int nameEnd = nameStart;
+                while (nameEnd < separator && icsString.charAt(nameEnd) != ';') {
+                    nameEnd++;
+                }
+
+                int valueStart = separator + 1;
+
+                if (regionEquals(icsString, nameStart, nameEnd, "BEGIN")) {
+                    // Prüfen, ob das erste Element der ICS Datei heruntergeladen wurde.
+                    if (regionEquals(icsString, valueStart, lineEnd, "VCALENDAR")) {
+                        return null;
+                    }
+                }
+                else if (regionEquals(icsString, nameStart, nameEnd, "SUMMARY")) {
+                    title = icsString.substring(valueStart, lineEnd);
+                }
+                else if (regionEquals(icsString, nameStart, nameEnd, "STATUS")) {
+                    if (regionEquals(icsString, valueStart, lineEnd, "CONFIRMED")) {
+                        entryState = EntryState.CONFIRMED;
+                    }
+                    else if (regionEquals(icsString, valueStart, lineEnd, "TENTATIVE")) {
+                        entryState = EntryState.OPEN;
+                    }
+                    else if (regionEquals(icsString, valueStart, lineEnd, "CANCELED")) {
+                        entryState = EntryState.CANCELED;
+                    }
+                }
+                else if (regionEquals(icsString, nameStart, nameEnd, "CATEGORIES")) {
+                    category = icsString.substring(valueStart, lineEnd).replace("\\,", "-");
+                    description = category;
+                }
+                else if (regionEquals(icsString, nameStart, nameEnd, "LOCATION")) {
+                    location = icsString.substring(valueStart, lineEnd);
+                }
+                else if (regionEquals(icsString, nameStart, nameEnd, "DTSTART")) {
+                    // DTSTART;TZID=Europe/Berlin:20180417T190000
+                    // DTSTART;VALUE=DATE:20180517
+                    // DTSTART:20180417T170000Z
+                    startTime = icsString.substring(valueStart, lineEnd);
+
+                    int tzid = findParameter(icsString, nameEnd, separator, "TZID=");
+                    if (tzid >= 0) {
+                        timezone = parameterValue(icsString, tzid, separator);
+                    }
+                }
+                else if (regionEquals(icsString, nameStart, nameEnd, "DTEND")) {
+                    endTime = icsString.substring(valueStart, lineEnd);
+                }
+                else if (regionEquals(icsString, nameStart, nameEnd, "UID")) {
+                    uid = icsString.substring(valueStart, lineEnd);
+                }
+                else if (regionEquals(icsString, nameStart, nameEnd, "RECURRENCE-ID")) {
+                    recurrenceId = icsString.substring(valueStart, lineEnd);
+                }
+                else if (regionEquals(icsString, nameStart, nameEnd, "SEQUENCE")) {
+                    try {
+                        sequence = Integer.parseInt(icsString.substring(valueStart, lineEnd).trim());
+                    } catch (NumberFormatException e) {
+                        // Eine fehlerhafte SEQUENCE macht das Event nicht unbrauchbar
+                        sequence = 0;
+                    }
+                }
+                else if (regionEquals(icsString, nameStart, nameEnd, "LAST-MODIFIED")) {
+                    try {
+                        lastModified = IcsDateParser.parse(icsString.substring(valueStart, lineEnd), "UTC");
+                    } catch (ParseException e) {
+                        // Ein fehlerhaftes LAST-MODIFIED macht das Event nicht unbrauchbar
+                        lastModified = 0;
+                    }
+                }
+            }
+
+            lineStart = nextLine + 1;
         }
 
         //Zur Description noch den aktuellen Status hinzufügen
@@ -274,12 +363,16 @@ public class CustomCalendarEntry {
         }
 
         // Falls keine Endzeit angegeben ist, wird hier die Endzeit auf "00:00" gesetzt
-        if (endTime == null) {
-            endTime = startTime.split("T")[0] + "T235959" ;
+        if (endTime == null && startTime != null) {
+            endTime = startTime.substring(0, Math.min(8, startTime.length())) + "T235959" ;
         }
 
         if (title != null && entryState != null && startTime != null) {
             result = new CustomCalendarEntry(calendarID, title, startTime, endTime, description, entryState, location, category, timezone);
+            result.uid = uid;
+            result.recurrenceId = recurrenceId;
+            result.sequence = sequence;
+            result.lastModified = lastModified;
             return result;
         }
         else {
@@ -287,6 +380,185 @@ public class CustomCalendarEntry {
         }
     }
 
+    /**
+     * Liest nur den Beginn eines Events aus, ohne den Eintrag zu erzeugen. Damit können Events außerhalb des Zeitfensters vor dem vollständigen Einlesen verworfen werden.
+     * @param icsString Event inkl. BEGIN:VEVENT / END:VEVENT (entfaltet)
+     * @return Beginn in Millisekunden oder Long.MIN_VALUE, falls DTSTART fehlt oder nicht gelesen werden kann
+     */
+    public static long peekStartMillis(String icsString) {
+
+        int[] line = findProperty(icsString, "DTSTART");
+
+        if (line == null) {
+            return Long.MIN_VALUE;
+        }
+
+        // Wie in fromICS: ohne Zeitzone gilt Berlin
+        String timezone = "Europe/Berlin";
+        int tzid = findParameter(icsString, line[1], line[2], "TZID=");
+        if (tzid >= 0) {
+            timezone = parameterValue(icsString, tzid, line[2]);
+        }
+
+        try {
+            return IcsDateParser.parse(icsString.substring(line[2] + 1, line[3]), timezone);
+        } catch (ParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Liest nur den Sync-Schlüssel eines Events aus (siehe getSyncKey), ohne den Eintrag zu erzeugen
+     * @param icsString Event inkl. BEGIN:VEVENT / END:VEVENT (entfaltet)
+     * @return UID bzw. UID und RECURRENCE-ID. Null, falls das Event keine UID hat (der Schlüssel hängt dann vom gesamten Inhalt ab).
+     */
+    public static String peekSyncKey(String icsString) {
+
+        int[] uidLine = findProperty(icsString, "UID");
+
+        if (uidLine == null) {
+            return null;
+        }
+
+        String uid = icsString.substring(uidLine[2] + 1, uidLine[3]);
+
+        int[] recurrenceLine = findProperty(icsString, "RECURRENCE-ID");
+
+        if (recurrenceLine == null) {
+            return uid;
+        }
+
+        return uid + "/" + icsString.substring(recurrenceLine[2] + 1, recurrenceLine[3]);
+    }
+
+    /**
+     * Sucht die erste Zeile mit der angegebenen Property
+     * @return Array mit Zeilenbeginn (0), Ende des Namens (1), Position des Trenners (2) und Zeilenende ohne CR (3). Null, falls die Property nicht vorhanden ist.
+     */
+    private static int[] findProperty(String icsString, String name) {
+
+        int length = icsString.length();
+        int lineStart = 0;
+
+        while (lineStart < length) {
+
+            int nextLine = icsString.indexOf('\n', lineStart);
+            if (nextLine < 0) {
+                nextLine = length;
+            }
+
+            int lineEnd = nextLine;
+            if (lineEnd > lineStart && icsString.charAt(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+
+            // Schneller Vorabvergleich, bevor der Trenner gesucht wird
+            if (icsString.regionMatches(lineStart, name, 0, name.length())) {
+
+                int separator = findValueSeparator(icsString, lineStart, lineEnd);
+                int nameEnd = lineStart + name.length();
+
+                if (separator >= nameEnd && (nameEnd == separator || icsString.charAt(nameEnd) == ';')) {
+                    return new int[] {lineStart, nameEnd, separator, lineEnd};
+                }
+            }
+
+            lineStart = nextLine + 1;
+        }
+
+        return null;
+    }
+
+    private static long hashText(long hash, String text) {
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+            }
+        }
+        // Trenner, damit bspw. Titel "ab" + Ort "" nicht denselben Wert ergibt wie Titel "a" + Ort "b"
+        return (hash ^ 0xFFFF) * FNV_PRIME;
+    }
+
+    private static long hashLong(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ (value & 0xFF)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return hash;
+    }
+
+    /**
+     * Prüft, ob ein Abschnitt des Strings genau dem gesuchten Wert entspricht
+     * @param source Zu durchsuchender String
+     * @param start Beginn des Abschnitts (inklusiv)
+     * @param end Ende des Abschnitts (exklusiv)
+     * @param token Gesuchter Wert
+     */
+    private static boolean regionEquals(String source, int start, int end, String token) {
+        return end - start == token.length() && source.regionMatches(start, token, 0, token.length());
+    }
+
+    /**
+     * Findet den Doppelpunkt der Property und Wert einer Zeile trennt. Doppelpunkte in Parametern mit Anführungszeichen werden ignoriert.
+     * @return Position des Trenners oder -1, falls die Zeile keinen Trenner enthält
+     */
+    private static int findValueSeparator(String source, int start, int end) {
+        boolean quoted = false;
+
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            else if (c == ':' && !quoted) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Sucht einen Parameter (bspw. "TZID=") im Parameterbereich einer Zeile
+     * @param source Zu durchsuchender String
+     * @param start Ende des Propertynamens (erstes Semikolon)
+     * @param end Position des Trenners zwischen Property und Wert
+     * @param parameter Gesuchter Parameter inkl. "="
+     * @return Position an der der Wert des Parameters beginnt oder -1, falls der Parameter nicht vorhanden ist
+     */
+    private static int findParameter(String source, int start, int end, String parameter) {
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) == ';' && source.regionMatches(i + 1, parameter, 0, parameter.length())) {
+                return i + 1 + parameter.length();
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Liest den Wert eines Parameters aus. Anführungszeichen werden entfernt.
+     * @param source Zu durchsuchender String
+     * @param start Beginn des Parameterwerts (Rückgabe von findParameter)
+     * @param end Position des Trenners zwischen Property und Wert
+     */
+    private static String parameterValue(String source, int start, int end) {
+        if (start < end && source.charAt(start) == '"') {
+            int closing = source.indexOf('"', start + 1);
+            if (closing > start && closing < end) {
+                return source.substring(start + 1, closing);
+            }
+        }
+
+        int valueEnd = start;
+        while (valueEnd < end && source.charAt(valueEnd) != ';') {
+            valueEnd++;
+        }
+
+        return source.substring(start, valueEnd);
+    }
+
     //=======================================================
     //========================ENUMS==========================
     //=======================================================
@@ -377,4 +649,36 @@ public class CustomCalendarEntry {
         this.timezone = timezone;
     }
 
+    public String getUid() {
+        return uid;
+    }
+
+    public void setUid(String uid) {
+        this.uid = uid;
+    }
+
+    public String getRecurrenceId() {
+        return recurrenceId;
+    }
+
+    public void setRecurrenceId(String recurrenceId) {
+        this.recurrenceId = recurrenceId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
 }
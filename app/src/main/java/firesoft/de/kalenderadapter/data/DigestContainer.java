@@ -31,12 +31,30 @@ public class DigestContainer {
     private String algorithm;
     private String qop;
     private String cnonce;
+    private String opaque;
     private int nc;
+    private boolean stale;
 
     //=======================================================
     //=====================KONSTRUKTOR=======================
     //=======================================================
 
+    /**
+     * Stellt eine gespeicherte Digest Sitzung wieder her
+     * @param nc Zuletzt verwendeter Nonce-Count. Vor der nächsten Anfrage muss incrementNc() aufgerufen werden.
+     */
+    public DigestContainer(String realm, String nonce, String qop, String opaque, String algorithm, int nc) {
+        this.realm = realm;
+        this.nonce = nonce;
+        this.qop = qop;
+        this.opaque = opaque;
+        this.algorithm = algorithm;
+        this.nc = nc;
+    }
+
+    /**
+     * Liest die Challenge aus dem WWW-Authenticate-Header des Servers
+     */
     public DigestContainer(String headerField) {
 
         headerField = headerField.replace("Digest ", "");
@@ -51,6 +69,10 @@ public class DigestContainer {
                 algorithm = "MD5";
 
             }
+            else if (element.startsWith("stale=")) {
+                // Der Wert steht üblicherweise nicht in Anführungszeichen (stale=true)
+                stale = element.substring(6).replace("\"","").trim().equalsIgnoreCase("true");
+            }
             else {
                 String[] element_fields = element.split("(=\")");
 
@@ -71,6 +93,11 @@ public class DigestContainer {
                         qop = qop.replace("\"","");
                         break;
 
+                    case "opaque":
+                        opaque = element_fields[1];
+                        opaque = opaque.replace("\"","");
+                        break;
+
                     case "nc":
                         String tmp = element_fields[1].replace("\"","");
                         nc = Integer.valueOf(tmp);
@@ -91,6 +118,13 @@ public class DigestContainer {
     //===================PUBLIC METHODEN=====================
     //=======================================================
 
+    /**
+     * Erhöht den Nonce-Count. Muss vor jeder weiteren Anfrage mit derselben Nonce aufgerufen werden.
+     */
+    public void incrementNc() {
+        nc++;
+    }
+
     /**
      * Generiert über eine unsicheren Zufallsgenerator einen CNONCE
      * @param length Gewünschte Länge des CNONCE
@@ -136,10 +170,21 @@ public class DigestContainer {
         return cnonce;
     }
 
+    public String getOpaque() {
+        return opaque;
+    }
+
     public int getNc() {
         return nc;
     }
 
+    /**
+     * Gibt an, ob der Server die Anfrage nur wegen einer abgelaufenen Nonce abgelehnt hat (die Zugangsdaten waren korrekt)
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
     public String getNcAsString() {
 
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.data;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+
+/**
+ * Beschreibt eine ICS Datei die importiert werden soll: Adresse, Zugangsdaten und der Kalender in den die Events geschrieben werden.
+ * Jede Datei muss einen eigenen Zielkalender haben, da beim ersten Abgleich alle von der App angelegten Einträge des Kalenders der Datei zugeordnet werden (siehe findDuplicateCalendar).
+ */
+public class FeedConfig {
+
+    //=======================================================
+    //======================VARIABLEN========================
+    //=======================================================
+
+    private String url;
+    private String user;
+    private String password;
+    private int calendarId;
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    private static final String JSON_URL = "url";
+    private static final String JSON_USER = "user";
+    private static final String JSON_PASSWORD = "pw";
+    private static final String JSON_CALENDAR = "calendar";
+
+    //=======================================================
+    //=====================KONSTRUKTOR=======================
+    //=======================================================
+
+    /**
+     * Erzeugt eine neue Instanz
+     * @param url Adresse der ICS Datei
+     * @param user Nutzername (leer oder null = ohne Anmeldung)
+     * @param password Kennwort
+     * @param calendarId ID des Zielkalenders
+     */
+    public FeedConfig(String url, String user, String password, int calendarId) {
+        this.url = url;
+
+        // Der FeedDownloader meldet sich an, sobald ein Nutzername gesetzt ist. Ein leerer Nutzername bedeutet daher ohne Anmeldung.
+        this.user = user == null || user.equals("") ? null : user;
+        this.password = password;
+        this.calendarId = calendarId;
+    }
+
+    //=======================================================
+    //===================PUBLIC METHODEN=====================
+    //=======================================================
+
+    /**
+     * Sucht einen Zielkalender, in den mehrere ICS Dateien importiert werden sollen
+     * @param feeds Die zu prüfenden Konfigurationen
+     * @return ID des ersten mehrfach verwendeten Kalenders oder -1, falls jede Datei einen eigenen Kalender hat
+     */
+    public static int findDuplicateCalendar(Collection<FeedConfig> feeds) {
+
+        HashSet<Integer> calendars = new HashSet<>();
+
+        for (FeedConfig feed : feeds
+                ) {
+            if (!calendars.add(feed.getCalendarId())) {
+                return feed.getCalendarId();
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Wandelt eine Liste von Konfigurationen in einen JSON String um, der in den Einstellungen gespeichert werden kann
+     */
+    public static String toJson(ArrayList<FeedConfig> feeds) {
+
+        JSONArray array = new JSONArray();
+
+        try {
+            for (FeedConfig feed : feeds
+                    ) {
+                JSONObject object = new JSONObject();
+                object.put(JSON_URL, feed.getUrl());
+                object.put(JSON_USER, feed.getUser());
+                object.put(JSON_PASSWORD, feed.getPassword());
+                object.put(JSON_CALENDAR, feed.getCalendarId());
+                array.put(object);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return array.toString();
+    }
+
+    /**
+     * Liest eine Liste von Konfigurationen aus einem JSON String. Einträge ohne Adresse werden übersprungen.
+     * @return Liste der Konfigurationen. Leer, falls der String leer oder fehlerhaft ist.
+     */
+    public static ArrayList<FeedConfig> fromJson(String json) {
+
+        ArrayList<FeedConfig> feeds = new ArrayList<>();
+
+        if (json == null || json.equals("")) {
+            return feeds;
+        }
+
+        try {
+            JSONArray array = new JSONArray(json);
+
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject object = array.getJSONObject(i);
+
+                String url = object.optString(JSON_URL, "");
+                if (url.equals("")) {
+                    continue;
+                }
+
+                feeds.add(new FeedConfig(url, object.optString(JSON_USER, ""), object.optString(JSON_PASSWORD, ""), object.optInt(JSON_CALENDAR, 0)));
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return feeds;
+    }
+
+    //=======================================================
+    //=======================GETTER==========================
+    //=======================================================
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getCalendarId() {
+        return calendarId;
+    }
+}
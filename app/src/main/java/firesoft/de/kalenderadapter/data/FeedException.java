@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.data;
+
+import java.io.IOException;
+
+/**
+ * Fehler beim Abruf einer ICS Datei mit dem HTTP-Status der Serverantwort. Anhand des Status wird unterschieden, ob sich ein erneuter Versuch lohnt.
+ */
+public class FeedException extends IOException {
+
+    //=======================================================
+    //======================VARIABLEN========================
+    //=======================================================
+
+    private final int responseCode;
+
+    //=======================================================
+    //=====================KONSTRUKTOR=======================
+    //=======================================================
+
+    /**
+     * Erzeugt eine neue Instanz
+     * @param message Fehlermeldung für den Nutzer
+     * @param responseCode HTTP-Status der Serverantwort
+     */
+    public FeedException(String message, int responseCode) {
+        super(message);
+        this.responseCode = responseCode;
+    }
+
+    //=======================================================
+    //===================PUBLIC METHODEN=====================
+    //=======================================================
+
+    /**
+     * Gibt an, ob der Fehler vorübergehend ist (Zeitüberschreitung, zu viele Anfragen, Serverfehler). Bei Anmeldefehlern oder fehlenden Dateien lohnt sich ein erneuter Versuch nicht.
+     */
+    public boolean isTransient() {
+        return responseCode == 408 || responseCode == 429 || responseCode >= 500;
+    }
+
+    /**
+     * Prüft, ob ein Fehler vorübergehend ist. Netzwerkfehler (IOException) gelten als vorübergehend, HTTP-Fehler nur bei entsprechendem Status. Alle anderen Fehler werden nicht wiederholt.
+     * Ein unterbrochener Import (SyncInterruptedException) ist kein Fehler der Verbindung und gilt daher nicht als vorübergehend.
+     * @param e Der aufgetretene Fehler
+     */
+    public static boolean isTransient(Exception e) {
+
+        if (e instanceof SyncInterruptedException) {
+            return false;
+        }
+
+        if (e instanceof FeedException) {
+            return ((FeedException) e).isTransient();
+        }
+
+        return e instanceof IOException;
+    }
+
+    //=======================================================
+    //=======================GETTER==========================
+    //=======================================================
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+}
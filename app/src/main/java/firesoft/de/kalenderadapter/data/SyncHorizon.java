@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.data;
+
+import java.util.Calendar;
+
+/**
+ * Zeitfenster um den aktuellen Zeitpunkt, innerhalb dessen Events importiert und abgeglichen werden. Events die außerhalb beginnen, werden beim Import übersprungen und im Kalender nicht angefasst.
+ */
+public class SyncHorizon {
+
+    //=======================================================
+    //======================VARIABLEN========================
+    //=======================================================
+
+    private final long from;
+
+    private final long to;
+
+    //=======================================================
+    //=====================KONSTRUKTOR=======================
+    //=======================================================
+
+    /**
+     * Erzeugt eine neue Instanz
+     * @param from Frühester Beginn eines Events in Millisekunden (inklusiv). Long.MIN_VALUE = unbegrenzt.
+     * @param to Spätester Beginn eines Events in Millisekunden (inklusiv). Long.MAX_VALUE = unbegrenzt.
+     */
+    public SyncHorizon(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Erzeugt das Zeitfenster aus den Einstellungen. Die Grenzen werden auf ganze Tage erweitert, damit sich das Zeitfenster nur einmal am Tag verschiebt.
+     * @param pastDays Anzahl der Tage in der Vergangenheit. 0 = unbegrenzt.
+     * @param futureMonths Anzahl der Monate in der Zukunft. 0 = unbegrenzt.
+     * @param now Aktueller Zeitpunkt in Millisekunden
+     * @return Das Zeitfenster oder null, falls in beide Richtungen unbegrenzt
+     */
+    public static SyncHorizon create(int pastDays, int futureMonths, long now) {
+
+        if (pastDays <= 0 && futureMonths <= 0) {
+            return null;
+        }
+
+        Calendar calendar = Calendar.getInstance();
+
+        long from = Long.MIN_VALUE;
+        if (pastDays > 0) {
+            calendar.setTimeInMillis(now);
+            calendar.add(Calendar.DAY_OF_YEAR, -pastDays);
+            setTimeOfDay(calendar, 0, 0, 0, 0);
+            from = calendar.getTimeInMillis();
+        }
+
+        long to = Long.MAX_VALUE;
+        if (futureMonths > 0) {
+            calendar.setTimeInMillis(now);
+            calendar.add(Calendar.MONTH, futureMonths);
+            setTimeOfDay(calendar, 23, 59, 59, 999);
+            to = calendar.getTimeInMillis();
+        }
+
+        return new SyncHorizon(from, to);
+    }
+
+    //=======================================================
+    //===================PUBLIC METHODEN=====================
+    //=======================================================
+
+    /**
+     * Prüft, ob ein Event mit dem angegebenen Beginn innerhalb des Zeitfensters liegt
+     * @param startMillis Beginn des Events in Millisekunden
+     */
+    public boolean contains(long startMillis) {
+        return startMillis >= from && startMillis <= to;
+    }
+
+    /**
+     * Prüft, ob ein anderes Zeitfenster vollständig innerhalb dieses Zeitfensters liegt. Wurde eine Datei mit diesem Zeitfenster importiert,
+     * enthält der Kalender damit bereits alle Events des anderen Zeitfensters.
+     * @param other Das andere Zeitfenster. Null = unbegrenzt.
+     */
+    public boolean covers(SyncHorizon other) {
+
+        if (other == null) {
+            return from == Long.MIN_VALUE && to == Long.MAX_VALUE;
+        }
+
+        return other.from >= from && other.to <= to;
+    }
+
+    //=======================================================
+    //==================PRIVATE METHODEN=====================
+    //=======================================================
+
+    private static void setTimeOfDay(Calendar calendar, int hour, int minute, int second, int millis) {
+        calendar.set(Calendar.HOUR_OF_DAY, hour);
+        calendar.set(Calendar.MINUTE, minute);
+        calendar.set(Calendar.SECOND, second);
+        calendar.set(Calendar.MILLISECOND, millis);
+    }
+
+    //=======================================================
+    //=======================GETTER==========================
+    //=======================================================
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.data;
+
+import java.io.IOException;
+
+/**
+ * Ein Import wurde an einem Checkpoint beendet, weil er abgebrochen wurde oder sein Zeitbudget aufgebraucht hat. Die bis dahin geschriebenen Einträge sind vollständig und gespeichert, der nächste Lauf setzt dort fort.
+ * Gilt nicht als vorübergehender Fehler (siehe FeedException.isTransient). Der RetryScheduler plant stattdessen direkt einen Lauf zur Fortsetzung, ohne einen Versuch zu zählen.
+ */
+public class SyncInterruptedException extends IOException {
+
+    //=======================================================
+    //=====================KONSTRUKTOR=======================
+    //=======================================================
+
+    /**
+     * Erzeugt eine neue Instanz
+     * @param message Meldung für den Nutzer
+     */
+    public SyncInterruptedException(String message) {
+        super(message);
+    }
+}
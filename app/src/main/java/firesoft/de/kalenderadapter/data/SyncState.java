@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.data;
+
+/**
+ * Gespeicherter Stand eines Events: Welcher Kalendereintrag gehört zu welchem Sync-Schlüssel und mit welchem Inhalt wurde er zuletzt geschrieben.
+ */
+public class SyncState {
+
+    //=======================================================
+    //======================VARIABLEN========================
+    //=======================================================
+
+    private String syncKey;
+
+    private int eventId;
+
+    private long contentHash;
+
+    private int generation;
+
+    //=======================================================
+    //=====================KONSTRUKTOR=======================
+    //=======================================================
+
+    /**
+     * Erzeugt eine neue Instanz
+     * @param syncKey Sync-Schlüssel des Events (siehe CustomCalendarEntry.getSyncKey())
+     * @param eventId ID des Events im Kalender
+     * @param contentHash Hashwert über den Inhalt des Events (siehe CustomCalendarEntry.getContentHash())
+     * @param generation Nummer des Abgleichs, in dem das Event zuletzt in der ICS Datei enthalten war
+     */
+    public SyncState(String syncKey, int eventId, long contentHash, int generation) {
+        this.syncKey = syncKey;
+        this.eventId = eventId;
+        this.contentHash = contentHash;
+        this.generation = generation;
+    }
+
+    //=======================================================
+    //=======================GETTER==========================
+    //=======================================================
+
+    public String getSyncKey() {
+        return syncKey;
+    }
+
+    public int getEventId() {
+        return eventId;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+}
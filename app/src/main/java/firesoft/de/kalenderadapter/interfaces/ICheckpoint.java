@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.interfaces;
+
+/**
+ * Wird während eines Imports zwischen zwei Batches abgefragt. So kann ein laufender Import sauber beendet werden (Abbruch oder abgelaufenes Zeitbudget).
+ */
+public interface ICheckpoint {
+
+    /**
+     * Gibt an, ob der Import an dieser Stelle beendet werden soll
+     */
+    boolean shouldStop();
+
+}
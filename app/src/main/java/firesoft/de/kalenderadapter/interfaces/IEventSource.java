@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.interfaces;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Quelle aus der die VEVENT-Blöcke einer ICS Datei nacheinander gelesen werden
+ */
+public interface IEventSource extends Closeable {
+
+    /**
+     * Liest das nächste Event
+     * @return Das Event inkl. BEGIN:VEVENT / END:VEVENT. Die Zeilen sind entfaltet und durch "\n" getrennt. Null, wenn keine weiteren Events vorhanden sind.
+     * @throws IOException Wird geworfen, falls das Lesen fehlschlägt
+     */
+    String nextEvent() throws IOException;
+
+    /**
+     * Gibt an, ob das Ende der ICS Datei (END:VCALENDAR) gelesen wurde. Ist das nicht der Fall, wurde die Datei evtl. abgeschnitten und es fehlen Events.
+     * Ist erst gültig, nachdem nextEvent() null geliefert hat.
+     */
+    boolean isComplete();
+
+}
@@ -16,13 +16,17 @@
 package firesoft.de.kalenderadapter.manager;
 
 import android.Manifest;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
 import android.provider.CalendarContract;
 import android.provider.CalendarContract.Events;
 import android.support.annotation.Nullable;
@@ -30,15 +34,21 @@ import android.support.v4.app.ActivityCompat;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 
 import firesoft.de.kalenderadapter.BuildConfig;
 import firesoft.de.kalenderadapter.R;
 import firesoft.de.kalenderadapter.data.CustomCalendar;
 import firesoft.de.kalenderadapter.data.CustomCalendarEntry;
+import firesoft.de.kalenderadapter.data.SyncHorizon;
+import firesoft.de.kalenderadapter.data.SyncInterruptedException;
+import firesoft.de.kalenderadapter.data.SyncState;
+import firesoft.de.kalenderadapter.interfaces.ICheckpoint;
 import firesoft.de.kalenderadapter.interfaces.IErrorCallback;
+import firesoft.de.kalenderadapter.utility.SyncDiff;
 
-import static firesoft.de.kalenderadapter.data.CustomCalendarEntry.TimeComparison.HIGHER;
-import static firesoft.de.kalenderadapter.data.CustomCalendarEntry.TimeComparison.LOWER;
 import static firesoft.de.kalenderadapter.manager.CalendarManager.Equality.EQUAL;
 
 /**
@@ -63,6 +73,44 @@ public class CalendarManager {
     // Enthält bereits hinzugefügte Einträge
     private ArrayList<CustomCalendarEntry> crowd;
 
+    // Index über die bereits hinzugefügten Einträge (Schlüssel: Titel, Start- und Endzeit). Ermöglicht die Prüfung auf vorhandene Einträge ohne die Liste zu durchlaufen.
+    private HashMap<CustomCalendarEntry, CustomCalendarEntry> crowdIndex;
+
+    // Gesammelte Operationen (Events und Erinnerungen) die noch nicht an den CalendarProvider übergeben wurden
+    private ArrayList<ContentProviderOperation> pendingOperations;
+
+    // Position der Event-Operationen in pendingOperations. Über diese werden die IDs aus dem Ergebnis des Batches gelesen.
+    private ArrayList<Integer> pendingEventIndices;
+
+    // IDs der Events die über applyPendingEntries eingefügt wurden
+    private ArrayList<Integer> insertedIds;
+
+    // Anzahl an Events (neu oder aktualisiert) in pendingOperations
+    private int pendingEntryCount;
+
+    // Sync-Schlüssel der Events in pendingEventIndices (gleiche Reihenfolge)
+    private ArrayList<String> pendingInsertKeys;
+
+    // Adresse der ICS Datei deren Abgleich gerade geschrieben wird. Jeder Batch wird dann im Checkpoint-Protokoll des SyncStateManager erfasst. Sonst null.
+    private String journalFeed;
+
+    // Inhalts-Hashes der Events in pendingInsertKeys (gleiche Reihenfolge). Wird nur beim Schreiben eines Abgleichs gefüllt.
+    private ArrayList<Long> pendingInsertHashes;
+
+    // Zuordnungen der vorgemerkten Updates. Wird nur beim Schreiben eines Abgleichs gefüllt.
+    private ArrayList<SyncState> pendingUpdateStates;
+
+    private SyncStateManager syncState;
+
+    // Wird beim Schreiben eines Abgleichs zwischen den Batches abgefragt. Kann null sein.
+    private ICheckpoint checkpoint;
+
+    // Gibt an, ob im laufenden Abgleich ein gespeichertes Event nicht mehr im Kalender gefunden wurde (bspw. weil der Nutzer es gelöscht hat)
+    private boolean staleMapping;
+
+    // Gibt an, ob im laufenden Abgleich bereits ein Batch geschrieben wurde. Erst danach wird der Checkpoint abgefragt, damit jeder Lauf Fortschritt speichert.
+    private boolean batchWritten;
+
     //=======================================================
     //=====================KONSTANTEN========================
     //=======================================================
@@ -73,6 +121,12 @@ public class CalendarManager {
 
     public static final String MARKER_FOR_ORGANIZER = "kalenderadapter@firesoft.de";
 
+    // Anzahl an Events die gesammelt werden, bevor ein Batch ausgeführt wird
+    private static final int BATCH_SIZE = 50;
+
+    // Anzahl an IDs je Löschaufruf. SQLite erlaubt maximal 999 Platzhalter pro Statement.
+    private static final int DELETE_CHUNK_SIZE = 500;
+
     //=======================================================
     //=====================KONSTRUKTOR=======================
     //=======================================================
@@ -87,6 +141,13 @@ public class CalendarManager {
         cals = new ArrayList<>();
         this.errorCallback = errorCallback;
         entryIds = new ArrayList<>();
+        pendingOperations = new ArrayList<>();
+        pendingEventIndices = new ArrayList<>();
+        insertedIds = new ArrayList<>();
+        pendingInsertKeys = new ArrayList<>();
+        pendingInsertHashes = new ArrayList<>();
+        pendingUpdateStates = new ArrayList<>();
+        syncState = new SyncStateManager(context);
     }
 
     //=======================================================
@@ -132,6 +193,9 @@ public class CalendarManager {
             Events.DTSTART,                     // 2
             Events.DTEND,                       // 3
             Events.TITLE,                       // 4
+            Events.EVENT_LOCATION,              // 5
+            Events.EVENT_TIMEZONE,              // 6
+            Events.UID_2445,                    // 7
     };
 
     /**
@@ -153,6 +217,9 @@ public class CalendarManager {
     private static final int EVENT_DTSTART = 2;
     private static final int EVENT_DTEND = 3;
     private static final int EVENT_TITLE = 4;
+    private static final int EVENT_LOCATION = 5;
+    private static final int EVENT_TIMEZONE = 6;
+    private static final int EVENT_UID = 7;
 
     //=======================================================
     //==================PRIVATE METHODEN=====================
@@ -203,188 +270,66 @@ public class CalendarManager {
     }
 
     /**
-     * Ruft aus dem momentan aktiven Kalender die bestehenden Einträge ab
-     * @return Null falls keine Einträge in der internen ID-Liste hinterlegt sind, ansonsten eine Liste mit den, für einen Vergleich notwendigen, Eintragsdaten
+     * Ruft aus dem momentan aktiven Kalender die bestehenden Einträge ab, die von der App angelegt wurden
+     * Die Einträge werden in einer einzigen Abfrage über die ID des Kalenders, den Marker im Feld ORGANIZER und die Spalte DELETED gefunden.
+     * @param horizon Zeitfenster. Es werden nur Einträge abgefragt, die innerhalb beginnen. Null = alle Einträge.
+     * @return Liste mit den, für einen Vergleich notwendigen, Eintragsdaten. Null falls die Abfrage fehlgeschlagen ist.
      */
-    private ArrayList<CustomCalendarEntry> getExistingEntries() throws SecurityException {
+    private ArrayList<CustomCalendarEntry> getExistingEntries(@Nullable SyncHorizon horizon) throws SecurityException {
         // Erstellt mit https://www.grokkingandroid.com/androids-calendarcontract-provider/
 
-        ArrayList<CustomCalendarEntry> entries = new ArrayList<>();
+        if (activeCalendar == null) {
+            return null;
+        }
+
+        // Ist DELETED = 1, wurde der Eintrag bereits gelöscht und wartet nur noch auf den SyncAdapter
+        String selection = Events.CALENDAR_ID + " = ? AND " + Events.ORGANIZER + " = ? AND " + Events.DELETED + " = 0";
+        ArrayList<String> selectionArgs = new ArrayList<>();
+        selectionArgs.add(String.valueOf(activeCalendar.getId()));
+        selectionArgs.add(MARKER_FOR_ORGANIZER);
 
-        // Wenn keine ID's gespeichert wurden, können Einträge nur über den Marker gefunden werden
-        if (entryIds.size() == 0) {
-            return getExistingEntriesByMarker();
+        // Nur das Zeitfenster abfragen. Der Aufwand hängt dann nicht mehr von der Anzahl vergangener Termine ab.
+        if (horizon != null && horizon.getFrom() != Long.MIN_VALUE) {
+            selection += " AND " + Events.DTSTART + " >= ?";
+            selectionArgs.add(String.valueOf(horizon.getFrom()));
         }
 
-        for (Integer id : entryIds
-                ) {
+        if (horizon != null && horizon.getTo() != Long.MAX_VALUE) {
+            selection += " AND " + Events.DTSTART + " <= ?";
+            selectionArgs.add(String.valueOf(horizon.getTo()));
+        }
+
+        Cursor cur = context.getContentResolver().query(CalendarContract.Events.CONTENT_URI, EVENT_PROJECTION, selection, selectionArgs.toArray(new String[selectionArgs.size()]), null);
+
+        if (cur == null) {
+            return null;
+        }
 
-            // Cursor für den Datenabruf erstellen. Es wird anhand der ID (welche in dem Array mitgeliefert wird) nach einem Event gesucht
-            // Es wird zusätzlich die Spalte Deleted geprüft. Wenn diese = 1, dann wurde der Eintrag bereits gelöscht
-            Cursor cur = context.getContentResolver().query(CalendarContract.Events.CONTENT_URI, EVENT_PROJECTION, "(" + Events._ID + " = ?) AND (" + Events.CALENDAR_ID + " = " + activeCalendar.getId() + " AND " + Events.DELETED + " = 0)", new String[]{Integer.toString(id)},
-                    null);
+        ArrayList<CustomCalendarEntry> entries = new ArrayList<>(cur.getCount());
 
-            if (cur != null && cur.moveToFirst()) {
+        try {
+            while (cur.moveToNext()) {
 
-                // Das erste Suchergebnis abrufen und ein neues Entry-Objekt erstellen
+                // Das Suchergebnis abrufen und ein neues Entry-Objekt erstellen
                 CustomCalendarEntry entry = new CustomCalendarEntry();
                 entry.setEntryID(cur.getInt(EVENT_ID_INDEX));
                 entry.setDescription(cur.getString(EVENT_DESCRIPTION));
-
-                String tmpString = cur.getString(EVENT_DTSTART);
-                long tmpInt = Long.valueOf(tmpString);
-
-                entry.setStartMillis(tmpInt);
-                entry.setEndMillis(Long.valueOf(cur.getString(EVENT_DTEND)));
+                entry.setStartMillis(cur.getLong(EVENT_DTSTART));
+                entry.setEndMillis(cur.getLong(EVENT_DTEND));
                 entry.setTitle(cur.getString(EVENT_TITLE));
+                entry.setLocation(cur.getString(EVENT_LOCATION));
+                entry.setTimezone(cur.getString(EVENT_TIMEZONE));
+                entry.setUid(cur.getString(EVENT_UID));
 
-                cur.close();
-
-                // Eintrag zur Liste hinzufügen
                 entries.add(entry);
             }
-        }
-
-        entries = mergeEntryLists(getExistingEntriesByMarker(), entries);
-
-        return entries;
-    }
-
-    /**
-     * Findet Einträge die mit dem spezifischen Marker der App im Feld ORGANIZER versehen wurden.
-     * @return Liste die auch alle zusätzlich gefundenen Einträge enthält
-     */
-    private ArrayList<CustomCalendarEntry> getExistingEntriesByMarker() throws SecurityException {
-
-        ArrayList<CustomCalendarEntry> entries = new ArrayList<>();
-
-        // Cursor für den Datenabruf erstellen. Es wird anhand der ID (welche in dem Array mitgeliefert wird) nach einem Event gesucht
-        // Es wird zusätzlich die Spalte Deleted geprüft. Wenn diese = 1, dann wurde der Eintrag bereits gelöscht
-        Cursor cur = context.getContentResolver().query(CalendarContract.Events.CONTENT_URI, EVENT_PROJECTION, "(" + Events.ORGANIZER + " = ? AND " + Events.DELETED + " = 0)", new String[]{MARKER_FOR_ORGANIZER},
-                null);
-
-        boolean moreItemsAvailable = cur.moveToFirst();
-
-        while (moreItemsAvailable) {
-
-            // Das Suchergebnis abrufen und ein neues Entry-Objekt erstellen
-            CustomCalendarEntry entry = new CustomCalendarEntry();
-            entry.setEntryID(cur.getInt(EVENT_ID_INDEX));
-            entry.setDescription(cur.getString(EVENT_DESCRIPTION));
-
-            String tmpString = cur.getString(EVENT_DTSTART);
-            long tmpInt = Long.valueOf(tmpString);
-
-            entry.setStartMillis(tmpInt);
-            entry.setEndMillis(Long.valueOf(cur.getString(EVENT_DTEND)));
-            entry.setTitle(cur.getString(EVENT_TITLE));
-
-            entries.add(entry);
-
-            moreItemsAvailable = cur.moveToNext();
-
+        } finally {
+            cur.close();
         }
 
         return entries;
-
-    }
-
-    /**
-     * Fügt zwei Listen zusammen 
-     * @param ListA Erste Liste als ArrayList<CustomCalendarEntry>
-     * @param ListB Zweite Liste als ArrayList<CustomCalendarEntry>
-     * @return Ergebnisliste als ArrayList<CustomCalendarEntry>
-     */
-    private ArrayList<CustomCalendarEntry> mergeEntryLists(ArrayList<CustomCalendarEntry> ListA, ArrayList<CustomCalendarEntry> ListB) {
-
-        // Inhalt von Liste A wird direkt in die Ausgabeliste geschrieben
-        ArrayList<CustomCalendarEntry> mergedList = ListA;
-
-        // Alle Einträge in der Liste B durchgehen und prüfen, ob diese bereits in der Ausgabeliste enthalten sind
-        for (CustomCalendarEntry entryFromListB: ListB
-             ) {
-
-            // Binärsuche nach einem gleichen Eintrag durchführen
-            binarySearch(mergedList,0,mergedList.size() - 1,entryFromListB);
-
-            /*boolean allreadyExistsInMergedList = false;
-
-            for (int i = 0; i < mergedList.size(); i++) {
-                if (entryFromListB.equals(mergedList.get(i))) {
-                    allreadyExistsInMergedList = true;
-                    i = mergedList.size();
-                }
-            }
-
-            if (!allreadyExistsInMergedList) {
-                mergedList.add(entryFromListB);
-            }*/
-
-        }
-        
-        return mergedList;
-    }
-
-    /**
-     * Führt eine Binärsuche nach einem CustomCalendarEntry anhand der Startzeiten in einer ArrayList aus
-     */
-    private void binarySearch(ArrayList<CustomCalendarEntry> list, int start, int end, CustomCalendarEntry candidate) {
-
-        // Abkürzung: Wenn die Startzeit des Kandidaten kleiner oder größer als der erste bzw. letzt Wert der List ist, kann dieser direkt hinzugefügt werden.
-        if (list.get(0).compareStartTime(candidate) == LOWER) {
-            list.add(0,candidate);
-            return;
-        }
-        else if (list.get(list.size()-1).compareStartTime(candidate) == HIGHER) {
-            list.add(candidate);
-            return;
-        }
-
-
-        int pos = start + (end - start) / 2;
-        boolean lastStep = false;
-
-        // Prüfen, ob der aktuelle Wert direkt zwischen den beiden vorherigen liegt
-        if (pos == start) {
-            //Marker setzen. Dieser gibt an die nachfolgende Überprüfung den Hinweis ggf. jetzt einen Wert in die Liste einzufügen.
-            lastStep = true;
-        }
-
-
-        switch (list.get(pos).compareStartTime(candidate)) {
-
-            case HIGHER:
-                if (lastStep) {
-                    list.add(pos,candidate);
-                }
-                else {
-                    binarySearch(list, pos + 1, end, candidate);
-                }
-                break;
-
-            case EQUAL:
-                // Beide Einträge vergleichen und nur ggf. hinzufügen.
-                if (!list.get(pos).equals(candidate)) {
-                    // Sind nicht gleich -> Hinzufügen
-                    list.add(pos,candidate);
-                }
-                break;
-
-            case LOWER:
-                if (lastStep) {
-                    list.add(pos - 1,candidate);
-                }
-                else {
-                    binarySearch(list, start, pos - 1, candidate);
-                }
-                break;
-
-        }
-
-
     }
 
-
     //=======================================================
     //==================ÖFFENTLICHE METHODEN=================
     //=======================================================
@@ -403,6 +348,22 @@ public class CalendarManager {
         activeCalendar = findCalenderById(id);
     }
 
+    /**
+     * Sucht einen Kalender anhand des Namens, ohne den aktiven Kalender zu ändern
+     * @return Der Kalender oder null, falls kein Kalender mit diesem Namen existiert
+     */
+    public CustomCalendar getCalendar(String name) {
+        return findCalendarByName(name);
+    }
+
+    /**
+     * Sucht einen Kalender anhand der ID, ohne den aktiven Kalender zu ändern
+     * @return Der Kalender oder null, falls kein Kalender mit dieser ID existiert
+     */
+    public CustomCalendar getCalendar(int id) {
+        return findCalenderById(id);
+    }
+
     /**
      * Ruft die verfügbaren Kalender ab
      * @return Eine Liste mit den Namen der Kalender
@@ -473,20 +434,7 @@ public class CalendarManager {
 
         ContentResolver cr = context.getContentResolver();
 
-        ContentValues values = new ContentValues();
-        values.put(CalendarContract.Events.DTSTART, entry.getStartMillis());
-        values.put(CalendarContract.Events.DTEND, entry.getEndMillis());
-        values.put(CalendarContract.Events.TITLE, entry.getTitle());
-        values.put(CalendarContract.Events.DESCRIPTION, entry.getDescription());
-        values.put(CalendarContract.Events.EVENT_LOCATION, entry.getLocation());
-        values.put(CalendarContract.Events.CALENDAR_ID, entry.getEntryID());
-        values.put(CalendarContract.Events.EVENT_TIMEZONE, entry.getTimezone());
-
-        // Den Zeitraum des Eintrags als Beschäftigt markieren
-        values.put(CalendarContract.Events.AVAILABILITY, CalendarContract.Events.AVAILABILITY_BUSY);
-
-        // Die Spalte ORGANIZER wird als Marker verwendet. Durch diese kann die App erkennen, ob ein Eintrag von ihr angelegt wurde.
-        values.put(CalendarContract.Events.ORGANIZER, MARKER_FOR_ORGANIZER);
+        ContentValues values = buildEventValues(entry);
 
         // Prüfen, ob der Eintrag bereits hinzugefügt wurde
         if (checkIfExists) { // Wenn auf vorhandensein geprüft werden soll. Ansonsten wird übersprungen
@@ -539,13 +487,440 @@ public class CalendarManager {
     }
 
 
+    /**
+     * Sammelt einen neuen Eintrag (inkl. Erinnerungen) für das gebündelte Einfügen. Sobald die Batchgröße erreicht ist, werden die gesammelten Einträge in einer Transaktion an den CalendarProvider übergeben.
+     * Nach dem letzten Eintrag muss applyPendingEntries() aufgerufen werden, damit auch der Rest eingetragen wird.
+     * @param entry Der einzufügende Eintrag
+     * @param checkIfExists Gibt an, ob vor dem Hinzufügen des Eintrags geprüft werden soll, ob der Eintrag bereits existiert
+     * @param setReminder Gibt an, ob für die Einträge eine Erinnerung hinzugefügt werden soll
+     * @param useInteligentReminder Gibt an, ob die Erinnerungen in Abhängigkeit des (Rückmelde-)Status gesetzt werden sollen
+     * @return 0 falls der Eintrag vorgemerkt wurde, -1 falls das Ausführen des Batches fehlgeschlagen ist, -2 falls der Eintrag schon vorhanden ist, -3 falls keine Vergleichsdaten vorliegen
+     */
+    public int queueCalenderEntry(CustomCalendarEntry entry, boolean checkIfExists, boolean setReminder, boolean useInteligentReminder) {
+
+        // Prüfen, ob der Eintrag bereits hinzugefügt wurde
+        if (checkIfExists) {
+            switch (checkEntryExists(entry)) {
+
+                case EQUAL:
+                    return -2;
+
+                case UNKNOWN:
+                    break;
+
+                case NO_REFERENCE_VALUE:
+                    return -3;
+            }
+        }
+
+        ContentValues values = buildEventValues(entry);
+
+        ArrayList<ContentValues> reminders = null;
+        if (setReminder) {
+            reminders = buildReminders(entry, -1, useInteligentReminder);
+            values.put(CalendarContract.Events.HAS_ALARM, reminders.size() > 0);
+        }
+
+        // Die Position des Events wird für die Back-Reference der Erinnerungen benötigt
+        int eventIndex = pendingOperations.size();
+        pendingEventIndices.add(eventIndex);
+        pendingInsertKeys.add(entry.getSyncKey());
+
+        if (journalFeed != null) {
+            pendingInsertHashes.add(entry.getContentHash());
+        }
+
+        // Der Provider darf nach jedem vollständigen Event die Transaktion kurz freigeben, damit andere Zugriffe nicht blockiert werden
+        pendingOperations.add(ContentProviderOperation.newInsert(Events.CONTENT_URI)
+                .withValues(values)
+                .withYieldAllowed(true)
+                .build());
+
+        if (reminders != null) {
+            for (ContentValues reminder : reminders
+                    ) {
+                pendingOperations.add(ContentProviderOperation.newInsert(CalendarContract.Reminders.CONTENT_URI)
+                        .withValues(reminder)
+                        .withValueBackReference(CalendarContract.Reminders.EVENT_ID, eventIndex)
+                        .build());
+            }
+        }
+
+        pendingEntryCount++;
+
+        if (pendingEntryCount >= BATCH_SIZE) {
+            if (!applyPendingEntries()) {
+                return -1;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Merkt die Aktualisierung eines bestehenden Events für das gebündelte Schreiben vor
+     * @param eventId ID des bestehenden Events
+     * @param entry Neuer Inhalt des Events
+     * @param setReminder Gibt an, ob die Erinnerungen neu gesetzt werden sollen. Die bestehenden Erinnerungen des Events werden dabei ersetzt, da sich mit dem Status auch die Erinnerungen ändern können.
+     * @param useInteligentReminder Gibt an, ob die Erinnerungen in Abhängigkeit des (Rückmelde-)Status gesetzt werden sollen
+     * @return 0 falls die Aktualisierung vorgemerkt wurde, -1 falls das Ausführen des Batches fehlgeschlagen ist
+     */
+    private int queueCalenderUpdate(int eventId, CustomCalendarEntry entry, boolean setReminder, boolean useInteligentReminder) {
+
+        ContentValues values = buildEventValues(entry);
+
+        ArrayList<ContentValues> reminders = null;
+        if (setReminder) {
+            reminders = buildReminders(entry, eventId, useInteligentReminder);
+            values.put(CalendarContract.Events.HAS_ALARM, reminders.size() > 0);
+        }
+
+        // Existiert das Event nicht mehr, schlägt der Batch fehl. Die gespeicherte Zuordnung wird dann verworfen (siehe applyDiff).
+        pendingOperations.add(ContentProviderOperation.newUpdate(ContentUris.withAppendedId(Events.CONTENT_URI, eventId))
+                .withValues(values)
+                .withExpectedCount(1)
+                .withYieldAllowed(true)
+                .build());
+
+        if (reminders != null) {
+            pendingOperations.add(ContentProviderOperation.newDelete(CalendarContract.Reminders.CONTENT_URI)
+                    .withSelection(CalendarContract.Reminders.EVENT_ID + " = ?", new String[] {String.valueOf(eventId)})
+                    .build());
+
+            for (ContentValues reminder : reminders
+                    ) {
+                pendingOperations.add(ContentProviderOperation.newInsert(CalendarContract.Reminders.CONTENT_URI)
+                        .withValues(reminder)
+                        .build());
+            }
+        }
+
+        if (journalFeed != null) {
+            pendingUpdateStates.add(new SyncState(entry.getSyncKey(), eventId, entry.getContentHash(), 0));
+        }
+
+        pendingEntryCount++;
+
+        if (pendingEntryCount >= BATCH_SIZE) {
+            if (!applyPendingEntries()) {
+                return -1;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Erstellt einen Abgleich für eine ICS Datei. Die bestehenden Einträge werden aus dem SyncStateManager geladen.
+     * Nur wenn dort (noch) nichts gespeichert ist, wird der Kalender nach den Einträgen der App durchsucht.
+     * Dabei wird unabhängig vom Zeitfenster des Imports der gesamte Kalender gelesen. Sonst würden Einträge außerhalb nicht zugeordnet und
+     * später, sobald sie in das Zeitfenster rücken, doppelt angelegt.
+     * @param feed Adresse der ICS Datei
+     */
+    public SyncDiff createSyncDiff(String feed) {
+
+        if (syncState.hasOpenBatch(feed, activeCalendar.getId())) {
+            // Der letzte Import wurde während eines Batches beendet. Welche Events davon im Kalender stehen, ist nur über den Kalender selbst feststellbar.
+            // Die dort gefundenen Zuordnungen (inkl. Event-IDs) werden sofort gespeichert. Wird auch dieser Import abgebrochen, muss der Kalender nicht erneut durchsucht werden.
+            loadCalendarEntries();
+            SyncDiff diff = new SyncDiff(crowd);
+
+            syncState.replace(feed, activeCalendar.getId(), diff.getExistingStates());
+
+            return diff;
+        }
+
+        ArrayList<SyncState> states = syncState.load(feed, activeCalendar.getId());
+
+        if (states.size() > 0) {
+            return SyncDiff.fromSyncStates(states);
+        }
+
+        loadCalendarEntries();
+        return new SyncDiff(crowd);
+    }
+
+    /**
+     * Prüft, ob alle gespeicherten Zuordnungen einer ICS Datei noch auf Events im Kalender zeigen. Dafür werden nur die IDs der Events abgefragt.
+     * Hat der Nutzer ein importiertes Event gelöscht, werden die Zuordnungen verworfen. Der nächste Abgleich baut sie aus dem Kalender neu auf und legt das Event wieder an.
+     * @param feed Adresse der ICS Datei
+     * @return true, falls die Zuordnungen zum Kalender passen oder keine gespeichert sind. False, falls sie verworfen wurden.
+     */
+    public boolean verifySyncState(String feed) throws SecurityException {
+
+        ArrayList<SyncState> states = syncState.load(feed, activeCalendar.getId());
+
+        if (states.size() == 0) {
+            return true;
+        }
+
+        String selection = Events.CALENDAR_ID + " = ? AND " + Events.DELETED + " = 0";
+        Cursor cur = context.getContentResolver().query(Events.CONTENT_URI, new String[] {Events._ID}, selection, new String[] {String.valueOf(activeCalendar.getId())}, null);
+
+        if (cur == null) {
+            return true;
+        }
+
+        HashSet<Integer> eventIds = new HashSet<>(cur.getCount());
+
+        try {
+            while (cur.moveToNext()) {
+                eventIds.add(cur.getInt(0));
+            }
+        } finally {
+            cur.close();
+        }
+
+        for (SyncState state : states
+                ) {
+            if (!eventIds.contains(state.getEventId())) {
+                invalidateSyncState(feed);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Verwirft die gespeicherten Zuordnungen einer ICS Datei, bspw. nachdem Einträge ohne Abgleich hinzugefügt wurden
+     * @param feed Adresse der ICS Datei
+     */
+    public void invalidateSyncState(String feed) {
+        syncState.clear(feed, activeCalendar.getId());
+    }
+
+    /**
+     * Schreibt die von einem SyncDiff berechneten Änderungen in den aktiven Kalender. Es werden nur neue, geänderte und entfernte Events angefasst.
+     * Die Reihenfolge ist Inserts, Updates und zuletzt Löschungen. Bis der neue Stand vollständig geschrieben ist, bleiben die bisherigen Einträge im Kalender.
+     * Jeder geschriebene Batch wird sofort im SyncStateManager gespeichert (Checkpoint-Protokoll). Wird der Import an einem Checkpoint oder durch das Ende des Prozesses abgebrochen, schreibt der nächste Abgleich nur noch die restlichen Änderungen.
+     * @param diff Bereits berechneter Abgleich (SyncDiff.compute() wurde aufgerufen)
+     * @param feed Adresse der ICS Datei
+     * @param setReminder Gibt an, ob für die Einträge eine Erinnerung hinzugefügt werden soll
+     * @param useInteligentReminder Gibt an, ob die Erinnerungen in Abhängigkeit des (Rückmelde-)Status gesetzt werden sollen
+     * @return true falls alle Änderungen geschrieben wurden, ansonsten false
+     * @throws SyncInterruptedException Der Import wurde an einem Checkpoint beendet
+     */
+    public boolean applyDiff(SyncDiff diff, String feed, boolean setReminder, boolean useInteligentReminder) throws SyncInterruptedException {
+
+        journalFeed = feed;
+        batchWritten = false;
+        staleMapping = false;
+
+        try {
+            if (!applyDiffToCalendar(diff, setReminder, useInteligentReminder)) {
+                // Der Batch wurde evtl. teilweise geschrieben oder ein zu aktualisierendes Event existiert nicht mehr. Der gespeicherte Stand wird beim nächsten Mal aus dem Kalender neu aufgebaut.
+                syncState.clear(feed, activeCalendar.getId());
+                return false;
+            }
+        } catch (SyncInterruptedException e) {
+            // Die geschriebenen Batches sind bereits gespeichert. Die Löschungen bleiben offen und werden beim nächsten Abgleich erneut erkannt.
+            syncState.store(feed, activeCalendar.getId(), diff.getUnchangedStates(), new ArrayList<String>());
+            throw e;
+        } finally {
+            journalFeed = null;
+        }
+
+        syncState.store(feed, activeCalendar.getId(), diff.getUnchangedStates(), diff.getDeletedKeys());
+
+        if (staleMapping) {
+            // Nicht alle zu löschenden Events waren noch im Kalender. Die Zuordnungen passen nicht mehr und werden beim nächsten Mal aus dem Kalender neu aufgebaut.
+            syncState.clear(feed, activeCalendar.getId());
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.d("LOG_SERVICE", "Diff applied! Inserted: " + diff.getInserts().size() + " Updated: " + diff.getUpdates().size() + " Deleted: " + diff.getDeletes().size() + " Unchanged: " + diff.getUnchangedCount());
+        }
+
+        return true;
+    }
+
+    /**
+     * Schreibt Inserts, Updates und Löschungen eines SyncDiff in den Kalender
+     * @throws SyncInterruptedException Der Import wurde zwischen zwei Batches beendet. Alle bis dahin vorgemerkten Einträge sind geschrieben.
+     */
+    private boolean applyDiffToCalendar(SyncDiff diff, boolean setReminder, boolean useInteligentReminder) throws SyncInterruptedException {
+
+        for (CustomCalendarEntry entry : diff.getInserts()
+                ) {
+            checkpoint();
+
+            if (queueCalenderEntry(entry, false, setReminder, useInteligentReminder) < 0) {
+                discardPendingEntries();
+                return false;
+            }
+        }
+
+        for (Map.Entry<Integer, CustomCalendarEntry> update : diff.getUpdates().entrySet()
+                ) {
+            checkpoint();
+
+            if (queueCalenderUpdate(update.getKey(), update.getValue(), setReminder, useInteligentReminder) < 0) {
+                discardPendingEntries();
+                return false;
+            }
+        }
+
+        if (!applyPendingEntries()) {
+            return false;
+        }
+
+        if (diff.getDeletes().size() > 0) {
+            checkpoint();
+
+            if (deleteEventIds(diff.getDeletes()) < diff.getDeletes().size()) {
+                staleMapping = true;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Fragt den Checkpoint ab, sofern gerade kein Batch offen ist (d.h. direkt nach dem Schreiben eines Batches).
+     * Vor dem ersten geschriebenen Batch wird nicht abgebrochen. Sonst käme ein Import, dessen Download und Einlesen bereits das Zeitbudget aufbraucht, nie voran.
+     * @throws SyncInterruptedException Der Import soll hier beendet werden
+     */
+    private void checkpoint() throws SyncInterruptedException {
+
+        if (pendingEntryCount > 0 || !batchWritten) {
+            return;
+        }
+
+        if (checkpoint != null && checkpoint.shouldStop()) {
+            throw new SyncInterruptedException(context.getString(R.string.info_sync_interrupted));
+        }
+    }
+
+    /**
+     * Übergibt alle gesammelten Einträge in einer Transaktion an den CalendarProvider
+     * @return true falls alle Einträge eingefügt wurden, ansonsten false. Die gesammelten Einträge werden in beiden Fällen verworfen.
+     */
+    public boolean applyPendingEntries() {
+
+        if (pendingOperations.size() == 0) {
+            return true;
+        }
+
+        boolean success = true;
+
+        // Beim Schreiben eines Abgleichs wird der Batch vorab im Checkpoint-Protokoll vermerkt
+        if (journalFeed != null) {
+            syncState.beginBatch(journalFeed, activeCalendar.getId());
+        }
+
+        try {
+            ContentProviderResult[] results = context.getContentResolver().applyBatch(CalendarContract.AUTHORITY, pendingOperations);
+
+            ArrayList<SyncState> applied = new ArrayList<>(pendingUpdateStates);
+
+            for (int i = 0; i < pendingEventIndices.size(); i++) {
+                int index = pendingEventIndices.get(i);
+
+                if (index < results.length && results[index].uri != null) {
+                    int eventId = Integer.parseInt(results[index].uri.getLastPathSegment());
+                    insertedIds.add(eventId);
+
+                    if (journalFeed != null) {
+                        applied.add(new SyncState(pendingInsertKeys.get(i), eventId, pendingInsertHashes.get(i), 0));
+                    }
+                }
+            }
+
+            // Der Batch ist im Kalender -> Zuordnungen speichern und den Vermerk entfernen
+            if (journalFeed != null) {
+                syncState.commitBatch(journalFeed, activeCalendar.getId(), applied);
+            }
+
+            batchWritten = true;
+
+        } catch (RemoteException | OperationApplicationException | SecurityException e) {
+            e.printStackTrace();
+            success = false;
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.d("LOG_SERVICE", "Batch applied: " + pendingEntryCount + " events, " + pendingOperations.size() + " operations, success: " + success);
+        }
+
+        discardPendingEntries();
+
+        return success;
+    }
+
+    /**
+     * Verwirft alle gesammelten, noch nicht eingefügten Einträge
+     */
+    public void discardPendingEntries() {
+        pendingOperations.clear();
+        pendingEventIndices.clear();
+        pendingInsertKeys.clear();
+        pendingInsertHashes.clear();
+        pendingUpdateStates.clear();
+        pendingEntryCount = 0;
+    }
+
+    /**
+     * Gibt die geladenen Einträge des Kalenders und alle vorgemerkten Operationen frei. Wird nach einem Lauf im Hintergrund aufgerufen, damit die Listen bis zum nächsten Lauf keinen Speicher belegen.
+     * Vor dem nächsten Abgleich müssen die Einträge wieder geladen werden (siehe loadCalendarEntries).
+     */
+    public void releaseCalendarEntries() {
+        crowd = null;
+        crowdIndex = null;
+        entryIds = new ArrayList<>();
+        insertedIds = new ArrayList<>();
+        discardPendingEntries();
+    }
+
+    /**
+     * Gibt die IDs der über queueCalenderEntry eingefügten Events aus und setzt die Liste zurück
+     */
+    public ArrayList<Integer> takeInsertedIds() {
+        ArrayList<Integer> ids = insertedIds;
+        insertedIds = new ArrayList<>();
+        return ids;
+    }
+
+    /**
+     * Legt den Checkpoint fest, der beim Schreiben eines Abgleichs zwischen den Batches abgefragt wird
+     * @param checkpoint Der Checkpoint oder null, falls der Abgleich nicht beendet werden kann
+     */
+    public void setCheckpoint(@Nullable ICheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Erstellt die Spaltenwerte für einen neuen Kalendereintrag
+     */
+    private ContentValues buildEventValues(CustomCalendarEntry entry) {
+
+        ContentValues values = new ContentValues();
+        values.put(CalendarContract.Events.DTSTART, entry.getStartMillis());
+        values.put(CalendarContract.Events.DTEND, entry.getEndMillis());
+        values.put(CalendarContract.Events.TITLE, entry.getTitle());
+        values.put(CalendarContract.Events.DESCRIPTION, entry.getDescription());
+        values.put(CalendarContract.Events.EVENT_LOCATION, entry.getLocation());
+        values.put(CalendarContract.Events.CALENDAR_ID, entry.getEntryID());
+        values.put(CalendarContract.Events.EVENT_TIMEZONE, entry.getTimezone());
+
+        // Den Zeitraum des Eintrags als Beschäftigt markieren
+        values.put(CalendarContract.Events.AVAILABILITY, CalendarContract.Events.AVAILABILITY_BUSY);
+
+        // Die Spalte ORGANIZER wird als Marker verwendet. Durch diese kann die App erkennen, ob ein Eintrag von ihr angelegt wurde.
+        values.put(CalendarContract.Events.ORGANIZER, MARKER_FOR_ORGANIZER);
+
+        // Über die UID wird der Eintrag beim nächsten Abgleich wiedererkannt
+        values.put(CalendarContract.Events.UID_2445, entry.getSyncKey());
+
+        return values;
+    }
+
     /**
      * Löscht die übergebenen Eventids aus dem aktiven Kalender
      * Anmerkung: Das Löschen als Anwendung (ohne SyncAdapter) führt nur dazu, dass die Spalte "Deleted" auf 1 gesetzt wird. Dies signalisiert einem SyncAdapter, dass die Zeile gelöscht wurde. Der Eintrag bleibt aber in der Datenbank!
      * @return true falls Löschen erfolgreich verlauf ist, ansonsten false. Fehlerausgabe wird direkt durch die Funktion organisiert
      */
     public boolean deleteEntries() {
-        int counter = 0;
 
         // Es sollte immer eine aktuelle Liste gezogen werden
         this.loadCalendarEntries();
@@ -561,18 +936,8 @@ public class CalendarManager {
 
         if (entryIds.size() != 0) {
 
-            for (int id : entryIds
-                    ) {
-
-                // https://developer.android.com/guide/topics/providers/calendar-provider.html#attendees
-                Uri deleteUri = ContentUris.withAppendedId(Events.CONTENT_URI, id);
-                context.getContentResolver().delete(deleteUri, null, null);
+            deleteEventIds(entryIds);
 
-                counter++;
-                if (errorCallback != null) {
-                    errorCallback.publishProgress(String.valueOf(counter) + "/" + String.valueOf(entryIds.size()) + " gelöscht", counter, entryIds.size());
-                }
-            }
         } else {
             if (errorCallback != null) {
                 errorCallback.publishProgress("Keine Termine zum Löschen vorhanden!",1,1);
@@ -582,6 +947,9 @@ public class CalendarManager {
 
         entryIds.clear();
 
+        // Die gespeicherten Zuordnungen passen nicht mehr zum Kalender
+        syncState.clear(activeCalendar.getId());
+
         // Liste aktualisieren
         this.loadCalendarEntries();
 
@@ -627,23 +995,49 @@ public class CalendarManager {
         // Alle verfügbaren Einträge wurden eingelesen -> Cursor schliessen
         cur.close();
 
-        int counter = 0;
-
         // Die ausgelesenen ID's löschen
-        for (int id: entries
-                ) {
+        deleteEventIds(entries);
+
+        // Die gespeicherten Zuordnungen passen nicht mehr zum Kalender
+        syncState.clear(activeCalendar.getId());
+
+    }
+
+    /**
+     * Löscht die übergebenen Events blockweise aus dem aktiven Kalender. Je Block wird nur ein Aufruf an den CalendarProvider abgesetzt (Selektion über _ID IN (...)).
+     * Der Fortschritt wird nach jedem Block veröffentlicht.
+     * @param ids IDs der zu löschenden Events
+     * @return Anzahl der gelöschten Zeilen
+     */
+    private int deleteEventIds(ArrayList<Integer> ids) {
+
+        ContentResolver cr = context.getContentResolver();
+
+        int deletedRows = 0;
+
+        for (int start = 0; start < ids.size(); start += DELETE_CHUNK_SIZE) {
+
+            int end = Math.min(start + DELETE_CHUNK_SIZE, ids.size());
 
-            // https://developer.android.com/guide/topics/providers/calendar-provider.html#attendees
-            Uri deleteUri = ContentUris.withAppendedId(Events.CONTENT_URI, id);
-            int rows = cr.delete(deleteUri, null, null);
+            // Selektion mit einem Platzhalter je ID aufbauen. Die ID des Kalenders wird zur Sicherheit mit geprüft, damit keine fremden Einträge gelöscht werden.
+            StringBuilder selection = new StringBuilder(Events.CALENDAR_ID + " = ? AND " + Events._ID + " IN (");
+            String[] selectionArgs = new String[end - start + 1];
+            selectionArgs[0] = String.valueOf(activeCalendar.getId());
 
-            counter++;
+            for (int i = start; i < end; i++) {
+                selection.append(i == start ? "?" : ",?");
+                selectionArgs[i - start + 1] = String.valueOf(ids.get(i));
+            }
+            selection.append(")");
+
+            deletedRows += cr.delete(Events.CONTENT_URI, selection.toString(), selectionArgs);
 
             if (errorCallback != null) {
-                errorCallback.publishProgress(String.valueOf(counter) + "/" + String.valueOf(entries.size()) + " gelöscht", counter, entries.size());
+                errorCallback.publishProgress(String.valueOf(end) + "/" + String.valueOf(ids.size()) + " gelöscht", end, ids.size());
             }
         }
 
+        return deletedRows;
     }
 
     /**
@@ -653,7 +1047,7 @@ public class CalendarManager {
      */
     public Equality checkEntryExists(CustomCalendarEntry candidate) {
 
-        if (crowd == null) {
+        if (crowd == null || crowdIndex == null) {
             return Equality.NO_REFERENCE_VALUE;
         }
 
@@ -661,13 +1055,8 @@ public class CalendarManager {
             return Equality.NO_REFERENCE_VALUE;
         }
 
-        for (CustomCalendarEntry competitor: crowd
-                ) {
-
-            if (competitor.equals(candidate)) {
-                return EQUAL;
-            }
-
+        if (crowdIndex.containsKey(candidate)) {
+            return EQUAL;
         }
 
         return Equality.UNKNOWN;
@@ -678,14 +1067,28 @@ public class CalendarManager {
      * Public Schnittstelle um eine Liste mit den bereits eingetragenen Einträgen zu laden
      */
     public void loadCalendarEntries() {
-        crowd = getExistingEntries();
+        loadCalendarEntries(null);
+    }
+
+    /**
+     * Lädt die bereits eingetragenen Einträge, die innerhalb eines Zeitfensters beginnen
+     * @param horizon Zeitfenster. Null = alle Einträge.
+     */
+    public void loadCalendarEntries(@Nullable SyncHorizon horizon) {
+        crowd = getExistingEntries(horizon);
         entryIds.clear();
 
+        crowdIndex = null;
+
         if (crowd != null) {
 
+            // Index für checkEntryExists aufbauen
+            crowdIndex = new HashMap<>(crowd.size() * 2);
+
             // entryids einfügen
             for (CustomCalendarEntry entry : crowd
                     ) {
+                crowdIndex.put(entry, entry);
 //                if (!entryIds.contains(entry.getEntryID())) {
                     entryIds.add(entry.getEntryID());
 //                }
@@ -752,6 +1155,30 @@ public class CalendarManager {
      */
     private int attachReminders(CustomCalendarEntry entry, ContentResolver cr, int eventID, boolean useInteligentReminder) {
 
+        ArrayList<ContentValues> reminders = buildReminders(entry, eventID, useInteligentReminder);
+
+        // Alle Erinnerungen hinzufügen
+        for (ContentValues reminder: reminders
+        ) {
+            try {
+                cr.insert(CalendarContract.Reminders.CONTENT_URI, reminder);
+            } catch (SecurityException e) {
+                e.printStackTrace();
+//                publishError(getContext().getString(R.string.error_addCalendarEntry));
+                return -1;
+            }
+        }
+
+        return 1;
+
+    }
+
+    /**
+     * Erstellt die Erinnerungen für einen Eintrag
+     * @param eventID ID des Events. Bei -1 wird keine EVENT_ID eingetragen (bspw. wenn die ID erst über eine Back-Reference im Batch gesetzt wird)
+     */
+    private ArrayList<ContentValues> buildReminders(CustomCalendarEntry entry, int eventID, boolean useInteligentReminder) {
+
         // Erinnerung erstellen und die ID des zugehörigen Events eintragen
         ArrayList<ContentValues> reminders = new ArrayList<>();
         // Erinnerungsart einfügen. Es wird nur DEFAULT und ALARM unterstützt.
@@ -787,20 +1214,7 @@ public class CalendarManager {
             reminders.add(reminder);
         }
 
-        // Alle Erinnerungen hinzufügen
-        for (ContentValues reminder: reminders
-        ) {
-            try {
-                cr.insert(CalendarContract.Reminders.CONTENT_URI, reminder);
-            } catch (SecurityException e) {
-                e.printStackTrace();
-//                publishError(getContext().getString(R.string.error_addCalendarEntry));
-                return -1;
-            }
-        }
-
-        return 1;
-
+        return reminders;
     }
 
     /**
@@ -808,7 +1222,9 @@ public class CalendarManager {
      */
     private ContentValues createNewReminder(int entryId) {
         ContentValues reminder = new ContentValues();
-        reminder.put(CalendarContract.Reminders.EVENT_ID, entryId);
+        if (entryId >= 0) {
+            reminder.put(CalendarContract.Reminders.EVENT_ID, entryId);
+        }
         reminder.put(CalendarContract.Reminders.METHOD, CalendarContract.Reminders.METHOD_DEFAULT);
         return reminder;
     }
@@ -823,6 +1239,9 @@ public class CalendarManager {
     }
 
     public int getCrowdCount() {
+        if (crowd == null) {
+            return 0;
+        }
         return crowd.size();
     }
 
@@ -22,6 +22,10 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 
+import java.util.ArrayList;
+
+import firesoft.de.kalenderadapter.data.FeedConfig;
+
 /**
  * Manager Klasse mit der die gespeicherten Einstellungen zentral verwaltet und bereitgestellt werden
  */
@@ -100,6 +104,42 @@ public class PreferencesManager {
      */
     private boolean set_inteligent_reminder;
 
+    /**
+     * Enthält die weiteren ICS Dateien, die zusätzlich zur Haupt-URL importiert werden sollen
+     */
+    private ArrayList<FeedConfig> additional_feeds = new ArrayList<>();
+
+    /**
+     * Gibt an, ob die ICS Dateien vor dem Import im Cache-Verzeichnis gespeichert werden sollen (für sehr große Dateien und zur Fehlersuche)
+     */
+    private boolean spool_feeds;
+
+    /**
+     * Gibt an, ob im Hintergrund nur über ein nicht getaktetes Netzwerk (WLAN) synchronisiert werden soll
+     */
+    private boolean sync_unmetered_only;
+
+    /**
+     * Gibt an, ob im Hintergrund nur während des Ladens synchronisiert werden soll
+     */
+    private boolean sync_charging_only;
+
+    /**
+     * Gibt an, ob das Synchronisationsintervall an die beobachteten Änderungen der ICS Dateien angepasst werden soll. Das eingestellte Intervall dient dann als Ausgangswert.
+     */
+    private boolean adaptive_sync;
+
+    /**
+     * Maximale Dauer eines Imports im Hintergrund in Millisekunden. Danach wird der Import sauber beendet und beim nächsten Lauf fortgesetzt. 0 = unbegrenzt.
+     */
+    private long sync_time_budget;
+
+    /**
+     * Zeitfenster der Synchronisation: Anzahl der Tage in der Vergangenheit und der Monate in der Zukunft. Events außerhalb werden nicht importiert oder abgeglichen. 0 = unbegrenzt.
+     */
+    private int sync_past_days;
+    private int sync_future_months;
+
     //=======================================================
     //=====================KONSTANTEN========================
     //=======================================================
@@ -117,11 +157,22 @@ public class PreferencesManager {
     private static final String SET_REMINDER = "set_reminder";
     private static final String SET_INTELIGENT_REMINDER = "set_inteligent_reminder";
     private static final String REPLACE_EXISTING = "replace_existing";
+    private static final String ADDITIONAL_FEEDS = "additional_feeds";
+    private static final String SPOOL_FEEDS = "spool_feeds";
+    private static final String SYNC_UNMETERED_ONLY = "sync_unmetered_only";
+    private static final String SYNC_CHARGING_ONLY = "sync_charging_only";
+    private static final String ADAPTIVE_SYNC = "adaptive_sync";
+    private static final String SYNC_TIME_BUDGET = "sync_time_budget";
+    private static final String SYNC_PAST_DAYS = "sync_past_days";
+    private static final String SYNC_FUTURE_MONTHS = "sync_future_months";
     private static final String VERSION = "version";
 
     private static final long DEFAULT_SYNC_START = 10800000;
     public static final long DEFAULT_SYNC_INTERVAL = AlarmManager.INTERVAL_DAY;
 
+    // Der JobScheduler gewährt einem Job etwa 10 Minuten. Der Import soll vorher sauber enden.
+    public static final long DEFAULT_SYNC_TIME_BUDGET = 8 * 60 * 1000;
+
     //=======================================================
     //===================PUBLIC METHODEN=====================
     //=======================================================
@@ -196,6 +247,14 @@ public class PreferencesManager {
         editor.putBoolean(SET_REMINDER,set_reminder);
         editor.putBoolean(SET_INTELIGENT_REMINDER,set_inteligent_reminder);
         editor.putBoolean(REPLACE_EXISTING,replace_existing);
+        editor.putString(ADDITIONAL_FEEDS, FeedConfig.toJson(additional_feeds));
+        editor.putBoolean(SPOOL_FEEDS, spool_feeds);
+        editor.putBoolean(SYNC_UNMETERED_ONLY, sync_unmetered_only);
+        editor.putBoolean(SYNC_CHARGING_ONLY, sync_charging_only);
+        editor.putBoolean(ADAPTIVE_SYNC, adaptive_sync);
+        editor.putLong(SYNC_TIME_BUDGET, sync_time_budget);
+        editor.putInt(SYNC_PAST_DAYS, sync_past_days);
+        editor.putInt(SYNC_FUTURE_MONTHS, sync_future_months);
 
         // Aktuelle Versionsnummer abrufen
         PackageInfo packageInfo = null;
@@ -234,6 +293,14 @@ public class PreferencesManager {
         sync_from = DEFAULT_SYNC_INTERVAL; // Standard 24 Stunden
         set_reminder = true;
         set_inteligent_reminder = true;
+        additional_feeds = new ArrayList<>();
+        spool_feeds = false;
+        sync_unmetered_only = false;
+        sync_charging_only = false;
+        adaptive_sync = false;
+        sync_time_budget = DEFAULT_SYNC_TIME_BUDGET;
+        sync_past_days = 0;
+        sync_future_months = 0;
     }
 
     //=======================================================
@@ -255,6 +322,14 @@ public class PreferencesManager {
         set_reminder = preferences.getBoolean(SET_REMINDER, true);
         set_inteligent_reminder = preferences.getBoolean(SET_INTELIGENT_REMINDER, true);
         replace_existing = preferences.getBoolean(REPLACE_EXISTING, true);
+        additional_feeds = FeedConfig.fromJson(preferences.getString(ADDITIONAL_FEEDS, ""));
+        spool_feeds = preferences.getBoolean(SPOOL_FEEDS, false);
+        sync_unmetered_only = preferences.getBoolean(SYNC_UNMETERED_ONLY, false);
+        sync_charging_only = preferences.getBoolean(SYNC_CHARGING_ONLY, false);
+        adaptive_sync = preferences.getBoolean(ADAPTIVE_SYNC, false);
+        sync_time_budget = preferences.getLong(SYNC_TIME_BUDGET, DEFAULT_SYNC_TIME_BUDGET);
+        sync_past_days = preferences.getInt(SYNC_PAST_DAYS, 0);
+        sync_future_months = preferences.getInt(SYNC_FUTURE_MONTHS, 0);
     }
 
     /**
@@ -408,5 +483,69 @@ public class PreferencesManager {
     public void setReplaceExisting(boolean replace_existing) {
         this.replace_existing = replace_existing;
     }
+
+    public ArrayList<FeedConfig> getAdditionalFeeds() {
+        return additional_feeds;
+    }
+
+    public void setAdditionalFeeds(ArrayList<FeedConfig> additional_feeds) {
+        this.additional_feeds = additional_feeds;
+    }
+
+    public boolean isSpoolFeedsActivated() {
+        return spool_feeds;
+    }
+
+    public void setSpoolFeeds(boolean spool_feeds) {
+        this.spool_feeds = spool_feeds;
+    }
+
+    public boolean isSyncUnmeteredOnly() {
+        return sync_unmetered_only;
+    }
+
+    public void setSyncUnmeteredOnly(boolean sync_unmetered_only) {
+        this.sync_unmetered_only = sync_unmetered_only;
+    }
+
+    public boolean isSyncChargingOnly() {
+        return sync_charging_only;
+    }
+
+    public void setSyncChargingOnly(boolean sync_charging_only) {
+        this.sync_charging_only = sync_charging_only;
+    }
+
+    public boolean isAdaptiveSyncActivated() {
+        return adaptive_sync;
+    }
+
+    public void setAdaptiveSync(boolean adaptive_sync) {
+        this.adaptive_sync = adaptive_sync;
+    }
+
+    public long getSyncTimeBudget() {
+        return sync_time_budget;
+    }
+
+    public void setSyncTimeBudget(long sync_time_budget) {
+        this.sync_time_budget = sync_time_budget;
+    }
+
+    public int getSyncPastDays() {
+        return sync_past_days;
+    }
+
+    public void setSyncPastDays(int sync_past_days) {
+        this.sync_past_days = sync_past_days;
+    }
+
+    public int getSyncFutureMonths() {
+        return sync_future_months;
+    }
+
+    public void setSyncFutureMonths(int sync_future_months) {
+        this.sync_future_months = sync_future_months;
+    }
 }
 
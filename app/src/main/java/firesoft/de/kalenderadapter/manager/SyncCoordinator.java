@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.manager;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import firesoft.de.kalenderadapter.data.ResultWrapper;
+import firesoft.de.kalenderadapter.data.SyncInterruptedException;
+import firesoft.de.kalenderadapter.interfaces.ICheckpoint;
+import firesoft.de.kalenderadapter.interfaces.IErrorCallback;
+
+/**
+ * Stellt sicher, dass im gesamten Prozess immer nur eine Synchronisation läuft (Oberfläche und Hintergrundservice).
+ * Wird eine Synchronisation mit denselben Daten angefordert während bereits eine läuft, wird keine weitere gestartet. Der Aufrufer wartet auf die laufende Synchronisation und erhält deren Ergebnis und Fortschrittsmeldungen.
+ * Wurde die laufende Synchronisation durch den Checkpoint ihres Aufrufers beendet (Abbruch oder Zeitbudget), führt ein wartender Aufrufer die Synchronisation selbst erneut aus.
+ * Eine Synchronisation mit anderen Daten wartet, bis die laufende beendet ist. So schreiben nie zwei Importe gleichzeitig in einen Kalender.
+ */
+public class SyncCoordinator implements IErrorCallback {
+
+    //=======================================================
+    //=====================VARIABLEN=========================
+    //=======================================================
+
+    private static SyncCoordinator instance;
+
+    // Laufende Synchronisation und deren Schlüssel. Null, falls keine läuft.
+    private FutureTask<ResultWrapper> inFlight;
+    private String inFlightKey;
+
+    // Empfänger der Fortschrittsmeldungen der laufenden Synchronisation
+    private final CopyOnWriteArrayList<IErrorCallback> participants;
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    // Abstand in Millisekunden, in dem ein wartender Aufrufer seinen Checkpoint abfragt
+    private static final long WAIT_INTERVAL = 250;
+
+    //=======================================================
+    //====================KONSTRUKTOR========================
+    //=======================================================
+
+    SyncCoordinator() {
+        participants = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Gibt die Instanz des Prozesses aus
+     */
+    public static synchronized SyncCoordinator getInstance() {
+        if (instance == null) {
+            instance = new SyncCoordinator();
+        }
+        return instance;
+    }
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    /**
+     * Führt eine Synchronisation aus oder schließt sich einer laufenden Synchronisation mit demselben Schlüssel an. Blockiert bis zum Ende der Synchronisation.
+     * Der Aufrufer kann das Warten nicht abbrechen (siehe run mit ICheckpoint).
+     */
+    public ResultWrapper run(String key, Callable<ResultWrapper> sync, IErrorCallback participant) {
+        return run(key, sync, participant, null);
+    }
+
+    /**
+     * Führt eine Synchronisation aus oder schließt sich einer laufenden Synchronisation mit demselben Schlüssel an. Blockiert bis zum Ende der Synchronisation.
+     * @param key Beschreibt die Synchronisation (bspw. Adresse, Nutzer und Kalender). Nur bei gleichem Schlüssel wird die laufende Synchronisation übernommen.
+     * @param sync Die eigentliche Synchronisation. Wird nur ausgeführt, wenn keine passende Synchronisation läuft (im aufrufenden Thread).
+     * @param participant Erhält die Fortschrittsmeldungen, solange der Aufrufer wartet
+     * @param checkpoint Checkpoint des Aufrufers. Wird während des Wartens auf eine fremde Synchronisation abgefragt. Null = Warten kann nicht abgebrochen werden.
+     * @return Ergebnis der Synchronisation. Alle beteiligten Aufrufer erhalten dasselbe Ergebnis, außer die Synchronisation wurde durch den Checkpoint eines anderen Aufrufers beendet.
+     * Null, falls der Aufrufer über seinen Checkpoint beendet wurde, während er gewartet hat.
+     */
+    public ResultWrapper run(String key, Callable<ResultWrapper> sync, IErrorCallback participant, ICheckpoint checkpoint) {
+
+        participants.add(participant);
+
+        try {
+            while (true) {
+
+                FutureTask<ResultWrapper> task;
+                boolean leader = false;
+                boolean join = true;
+
+                synchronized (this) {
+                    if (inFlight == null) {
+                        inFlight = createTask(sync);
+                        inFlightKey = key;
+                        leader = true;
+                    }
+                    else {
+                        join = inFlightKey.equals(key);
+                    }
+
+                    task = inFlight;
+                }
+
+                if (!join) {
+                    // Andere Daten -> Auf das Ende der laufenden Synchronisation warten und danach erneut prüfen
+                    if (!awaitCompletion(task, checkpoint)) {
+                        return null;
+                    }
+                    continue;
+                }
+
+                if (leader) {
+                    task.run();
+                    return task.get();
+                }
+
+                if (!awaitCompletion(task, checkpoint)) {
+                    return null;
+                }
+
+                ResultWrapper result = task.get();
+
+                // Die Synchronisation wurde am Checkpoint ihres Aufrufers beendet. Für diesen Aufrufer gilt der Abbruch nicht -> selbst (erneut) ausführen.
+                if (result != null && result.getException() instanceof SyncInterruptedException && !shouldStop(checkpoint)) {
+                    continue;
+                }
+
+                return result;
+            }
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            return new ResultWrapper(cause instanceof Exception ? (Exception) cause : e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ResultWrapper(e);
+        } finally {
+            participants.remove(participant);
+        }
+    }
+
+    /**
+     * Gibt an, ob gerade eine Synchronisation läuft
+     */
+    public synchronized boolean isRunning() {
+        return inFlight != null;
+    }
+
+    //=======================================================
+    //==================INTERNE METHODEN=====================
+    //=======================================================
+
+    private FutureTask<ResultWrapper> createTask(Callable<ResultWrapper> sync) {
+        return new FutureTask<ResultWrapper>(sync) {
+            @Override
+            protected void done() {
+                // Ab jetzt startet eine neue Anforderung wieder eine eigene Synchronisation
+                synchronized (SyncCoordinator.this) {
+                    if (inFlight == this) {
+                        inFlight = null;
+                        inFlightKey = null;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Wartet auf das Ende einer Synchronisation. Das Ergebnis wird verworfen.
+     * @param checkpoint Checkpoint des wartenden Aufrufers oder null
+     * @return true, falls die Synchronisation beendet ist. False, falls der Aufrufer vorher über seinen Checkpoint beendet wurde.
+     */
+    private boolean awaitCompletion(FutureTask<ResultWrapper> task, ICheckpoint checkpoint) throws InterruptedException {
+        while (true) {
+            try {
+                task.get(WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (ExecutionException e) {
+                // Der Fehler wird dem Aufrufer der Synchronisation gemeldet
+                return true;
+            } catch (TimeoutException e) {
+                if (shouldStop(checkpoint)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private static boolean shouldStop(ICheckpoint checkpoint) {
+        return checkpoint != null && checkpoint.shouldStop();
+    }
+
+    // region IErrorCallback-Methoden
+
+    /**
+     * Gibt die Meldung an alle beteiligten Aufrufer weiter
+     */
+    @Override
+    public void publishError(String message) {
+        for (IErrorCallback participant : participants
+                ) {
+            participant.publishError(message);
+        }
+    }
+
+    /**
+     * Gibt den Fortschritt an alle beteiligten Aufrufer weiter
+     */
+    @Override
+    public void publishProgress(String message, int current, int max) {
+        for (IErrorCallback participant : participants
+                ) {
+            participant.publishProgress(message, current, max);
+        }
+    }
+
+    @Override
+    public void appendProgress(String message) {
+        for (IErrorCallback participant : participants
+                ) {
+            participant.appendProgress(message);
+        }
+    }
+
+    @Override
+    public void switchCalendarUIElements(boolean enable) {
+        for (IErrorCallback participant : participants
+                ) {
+            participant.switchCalendarUIElements(enable);
+        }
+    }
+
+    // endregion
+}
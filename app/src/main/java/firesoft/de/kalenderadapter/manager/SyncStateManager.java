@@ -0,0 +1,577 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.manager;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import firesoft.de.kalenderadapter.data.DigestContainer;
+import firesoft.de.kalenderadapter.data.SyncHorizon;
+import firesoft.de.kalenderadapter.data.SyncState;
+
+/**
+ * Verwaltet die lokale Zuordnung von Sync-Schlüsseln (UID der ICS Datei) zu den Events im Kalender. Die Daten liegen in einer eigenen SQLite Datenbank und bleiben damit auch nach dem Beenden des Prozesses erhalten.
+ * Mit Hilfe dieser Zuordnung muss beim Abgleich nicht der gesamte Kalender nach den eigenen Einträgen durchsucht werden.
+ * Die Datenbank ist nur ein Zwischenspeicher: Fehlt sie oder wurde sie geleert, werden die Einträge wieder über den CalendarProvider gefunden.
+ */
+public class SyncStateManager {
+
+    //=======================================================
+    //=====================VARIABLEN=========================
+    //=======================================================
+
+    /**
+     * Es wird eine Instanz für die gesamte App verwendet, damit Service und Oberfläche nicht über getrennte Verbindungen auf die Datenbank schreiben
+     */
+    private static DatabaseHelper helper;
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    private static final String DATABASE_NAME = "syncstate.db";
+    private static final int DATABASE_VERSION = 7;
+
+    private static final String TABLE_ENTRIES = "entries";
+    private static final String COLUMN_FEED = "feed";
+    private static final String COLUMN_CALENDAR_ID = "calendar_id";
+    private static final String COLUMN_SYNC_KEY = "sync_key";
+    private static final String COLUMN_EVENT_ID = "event_id";
+    private static final String COLUMN_CONTENT_HASH = "content_hash";
+    private static final String COLUMN_GENERATION = "generation";
+
+    private static final String TABLE_FEEDS = "feeds";
+    private static final String COLUMN_ETAG = "etag";
+    private static final String COLUMN_LAST_MODIFIED = "last_modified";
+    private static final String COLUMN_BODY_HASH = "body_hash";
+    private static final String COLUMN_HORIZON_FROM = "horizon_from";
+    private static final String COLUMN_HORIZON_TO = "horizon_to";
+
+    private static final String TABLE_ACTIVITY = "feed_activity";
+    private static final String COLUMN_INTERVAL = "interval";
+
+    private static final String TABLE_JOURNAL = "open_batches";
+
+    private static final String TABLE_DIGEST = "digest_sessions";
+    private static final String COLUMN_USER = "user";
+    private static final String COLUMN_REALM = "realm";
+    private static final String COLUMN_NONCE = "nonce";
+    private static final String COLUMN_QOP = "qop";
+    private static final String COLUMN_OPAQUE = "opaque";
+    private static final String COLUMN_ALGORITHM = "algorithm";
+    private static final String COLUMN_NC = "nc";
+
+    private static final String[] DIGEST_PROJECTION = new String[] {
+            COLUMN_REALM,                       // 0
+            COLUMN_NONCE,                       // 1
+            COLUMN_QOP,                         // 2
+            COLUMN_OPAQUE,                      // 3
+            COLUMN_ALGORITHM,                   // 4
+            COLUMN_NC                           // 5
+    };
+
+    private static final String[] ENTRY_PROJECTION = new String[] {
+            COLUMN_SYNC_KEY,                    // 0
+            COLUMN_EVENT_ID,                    // 1
+            COLUMN_CONTENT_HASH,                // 2
+            COLUMN_GENERATION                   // 3
+    };
+
+    private static final String SELECTION_FEED = COLUMN_FEED + " = ? AND " + COLUMN_CALENDAR_ID + " = ?";
+
+    //=======================================================
+    //====================KONSTRUKTOR========================
+    //=======================================================
+
+    /**
+     * Erstellt eine neue Instanz
+     * @param context Eine Kopie des Context
+     */
+    public SyncStateManager(Context context) {
+        synchronized (SyncStateManager.class) {
+            if (helper == null) {
+                helper = new DatabaseHelper(context.getApplicationContext());
+            }
+        }
+    }
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    /**
+     * Lädt die gespeicherten Zuordnungen einer ICS Datei
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     * @return Liste der gespeicherten Zuordnungen. Leer, falls noch kein Abgleich gespeichert wurde.
+     */
+    public ArrayList<SyncState> load(String feed, int calendarId) {
+
+        SQLiteDatabase db = helper.getReadableDatabase();
+
+        Cursor cur = db.query(TABLE_ENTRIES, ENTRY_PROJECTION, SELECTION_FEED, feedArgs(feed, calendarId), null, null, null);
+
+        ArrayList<SyncState> states = new ArrayList<>(cur.getCount());
+
+        try {
+            while (cur.moveToNext()) {
+                states.add(new SyncState(cur.getString(0), cur.getInt(1), cur.getLong(2), cur.getInt(3)));
+            }
+        } finally {
+            cur.close();
+        }
+
+        return states;
+    }
+
+    /**
+     * Speichert das Ergebnis eines Abgleichs in einer Transaktion. Alle bestätigten Einträge erhalten eine neue Generationsnummer.
+     * Die eingefügten und aktualisierten Events wurden bereits batchweise über commitBatch gespeichert.
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     * @param unchanged Zuordnungen der unveränderten Events. Werden vollständig geschrieben, da sie nach einem Abgleich über den Kalender noch nicht gespeichert sind.
+     * @param removedKeys Sync-Schlüssel der gelöschten Events
+     */
+    public void store(String feed, int calendarId, Collection<SyncState> unchanged, Collection<String> removedKeys) {
+
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        db.beginTransaction();
+
+        try {
+            upsertStates(db, feed, calendarId, unchanged, nextGeneration(db, feed, calendarId));
+
+            SQLiteStatement remove = db.compileStatement("DELETE FROM " + TABLE_ENTRIES + " WHERE " + SELECTION_FEED + " AND " + COLUMN_SYNC_KEY + " = ?");
+
+            for (String key : removedKeys
+                    ) {
+                remove.clearBindings();
+                remove.bindString(1, feed);
+                remove.bindLong(2, calendarId);
+                remove.bindString(3, key);
+                remove.executeUpdateDelete();
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Vermerkt im Checkpoint-Protokoll, dass ein Batch an den CalendarProvider übergeben wird. Muss vor dem Schreiben des Batches aufgerufen werden.
+     * Bleibt der Vermerk stehen (bspw. weil der Prozess beendet wurde), ist unklar welche Events des Batches im Kalender angekommen sind (siehe hasOpenBatch).
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     */
+    public void beginBatch(String feed, int calendarId) {
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_FEED, feed);
+        values.put(COLUMN_CALENDAR_ID, calendarId);
+
+        helper.getWritableDatabase().insertWithOnConflict(TABLE_JOURNAL, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Speichert die Zuordnungen eines geschriebenen Batches und entfernt den Vermerk aus beginBatch in einer Transaktion.
+     * Ein abgebrochener Import setzt damit beim nächsten Abgleich nach dem letzten geschriebenen Batch fort.
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     * @param applied Die im Batch eingefügten oder aktualisierten Events
+     */
+    public void commitBatch(String feed, int calendarId, Collection<SyncState> applied) {
+
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        db.beginTransaction();
+
+        try {
+            upsertStates(db, feed, calendarId, applied, nextGeneration(db, feed, calendarId));
+            db.delete(TABLE_JOURNAL, SELECTION_FEED, feedArgs(feed, calendarId));
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Prüft, ob der letzte Import einer ICS Datei während des Schreibens eines Batches beendet wurde. Die gespeicherten Zuordnungen sind dann unvollständig.
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     * @return true, falls ein Batch begonnen aber nicht abgeschlossen wurde
+     */
+    public boolean hasOpenBatch(String feed, int calendarId) {
+
+        Cursor cur = helper.getReadableDatabase().query(TABLE_JOURNAL, new String[] {COLUMN_FEED}, SELECTION_FEED, feedArgs(feed, calendarId), null, null, null);
+
+        try {
+            return cur.moveToFirst();
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * Ersetzt die gespeicherten Zuordnungen einer ICS Datei durch die aus dem Kalender gelesenen und entfernt den Vermerk aus beginBatch in einer Transaktion.
+     * Wird nach einem abgebrochenen Batch verwendet, damit der Kalender nur einmal durchsucht werden muss.
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     * @param states Die im Kalender gefundenen Zuordnungen
+     */
+    public void replace(String feed, int calendarId, Collection<SyncState> states) {
+
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        db.beginTransaction();
+
+        try {
+            db.delete(TABLE_ENTRIES, SELECTION_FEED, feedArgs(feed, calendarId));
+            upsertStates(db, feed, calendarId, states, 1);
+            db.delete(TABLE_JOURNAL, SELECTION_FEED, feedArgs(feed, calendarId));
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Löscht die gespeicherten Zuordnungen einer ICS Datei. Der nächste Abgleich sucht die Einträge dann wieder über den CalendarProvider.
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     */
+    public void clear(String feed, int calendarId) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        db.delete(TABLE_ENTRIES, SELECTION_FEED, feedArgs(feed, calendarId));
+        db.delete(TABLE_JOURNAL, SELECTION_FEED, feedArgs(feed, calendarId));
+    }
+
+    /**
+     * Löscht alle gespeicherten Zuordnungen und Validatoren eines Kalenders (bspw. nachdem alle Einträge aus dem Kalender gelöscht wurden)
+     * @param calendarId ID des Kalenders
+     */
+    public void clear(int calendarId) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        String[] args = new String[] {String.valueOf(calendarId)};
+
+        db.delete(TABLE_ENTRIES, COLUMN_CALENDAR_ID + " = ?", args);
+        db.delete(TABLE_FEEDS, COLUMN_CALENDAR_ID + " = ?", args);
+        db.delete(TABLE_ACTIVITY, COLUMN_CALENDAR_ID + " = ?", args);
+        db.delete(TABLE_JOURNAL, COLUMN_CALENDAR_ID + " = ?", args);
+    }
+
+    /**
+     * Lädt die HTTP Validatoren (ETag und Last-Modified) der letzten erfolgreich importierten Version einer ICS Datei
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     * @return Array mit ETag (Index 0) und Last-Modified (Index 1), einzelne Werte können null sein. Null, falls nichts gespeichert ist.
+     */
+    public String[] loadValidators(String feed, int calendarId) {
+
+        Cursor cur = helper.getReadableDatabase().query(TABLE_FEEDS, new String[] {COLUMN_ETAG, COLUMN_LAST_MODIFIED}, SELECTION_FEED, feedArgs(feed, calendarId), null, null, null);
+
+        try {
+            if (cur.moveToFirst()) {
+                return new String[] {cur.getString(0), cur.getString(1)};
+            }
+            return null;
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * Lädt den Hashwert über den normalisierten Inhalt der letzten erfolgreich importierten Version einer ICS Datei (siehe NormalizedHashInputStream)
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     * @return Der Hashwert oder null, falls keiner gespeichert ist
+     */
+    public Long loadBodyHash(String feed, int calendarId) {
+
+        Cursor cur = helper.getReadableDatabase().query(TABLE_FEEDS, new String[] {COLUMN_BODY_HASH}, SELECTION_FEED, feedArgs(feed, calendarId), null, null, null);
+
+        try {
+            if (cur.moveToFirst() && !cur.isNull(0)) {
+                return cur.getLong(0);
+            }
+            return null;
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * Lädt das Zeitfenster, mit dem die zu den Validatoren gehörende Version einer ICS Datei importiert wurde
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     * @return Das Zeitfenster (unbegrenzte Grenzen als Long.MIN_VALUE bzw. Long.MAX_VALUE) oder null, falls keines gespeichert ist
+     */
+    public SyncHorizon loadHorizon(String feed, int calendarId) {
+
+        Cursor cur = helper.getReadableDatabase().query(TABLE_FEEDS, new String[] {COLUMN_HORIZON_FROM, COLUMN_HORIZON_TO}, SELECTION_FEED, feedArgs(feed, calendarId), null, null, null);
+
+        try {
+            if (cur.moveToFirst() && !cur.isNull(0) && !cur.isNull(1)) {
+                return new SyncHorizon(cur.getLong(0), cur.getLong(1));
+            }
+            return null;
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * Speichert die HTTP Validatoren und den Hashwert über den Inhalt einer ICS Datei. Sind alle Werte null, wird der gespeicherte Stand gelöscht.
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     * @param eTag ETag der Serverantwort
+     * @param lastModified Last-Modified-Header der Serverantwort
+     * @param bodyHash Hashwert über den normalisierten Inhalt
+     * @param horizon Zeitfenster des Imports. Null = unbegrenzt. Die Validatoren gelten nur, solange das aktuelle Zeitfenster darin liegt.
+     */
+    public void storeValidators(String feed, int calendarId, String eTag, String lastModified, Long bodyHash, SyncHorizon horizon) {
+
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        if (eTag == null && lastModified == null && bodyHash == null) {
+            db.delete(TABLE_FEEDS, SELECTION_FEED, feedArgs(feed, calendarId));
+            return;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_FEED, feed);
+        values.put(COLUMN_CALENDAR_ID, calendarId);
+        values.put(COLUMN_ETAG, eTag);
+        values.put(COLUMN_LAST_MODIFIED, lastModified);
+        values.put(COLUMN_BODY_HASH, bodyHash);
+        values.put(COLUMN_HORIZON_FROM, horizon != null ? horizon.getFrom() : Long.MIN_VALUE);
+        values.put(COLUMN_HORIZON_TO, horizon != null ? horizon.getTo() : Long.MAX_VALUE);
+
+        db.insertWithOnConflict(TABLE_FEEDS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Lädt das aus den beobachteten Änderungen berechnete Synchronisationsintervall einer ICS Datei (siehe AdaptiveInterval)
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     * @return Intervall in Millisekunden oder null, falls noch keine Änderung beobachtet wurde
+     */
+    public Long loadAdaptiveInterval(String feed, int calendarId) {
+
+        Cursor cur = helper.getReadableDatabase().query(TABLE_ACTIVITY, new String[] {COLUMN_INTERVAL}, SELECTION_FEED, feedArgs(feed, calendarId), null, null, null);
+
+        try {
+            if (cur.moveToFirst()) {
+                return cur.getLong(0);
+            }
+            return null;
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * Speichert das berechnete Synchronisationsintervall einer ICS Datei
+     * @param feed Adresse der ICS Datei
+     * @param calendarId ID des Kalenders in den die ICS Datei importiert wird
+     * @param interval Intervall in Millisekunden
+     */
+    public void storeAdaptiveInterval(String feed, int calendarId, long interval) {
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_FEED, feed);
+        values.put(COLUMN_CALENDAR_ID, calendarId);
+        values.put(COLUMN_INTERVAL, interval);
+
+        helper.getWritableDatabase().insertWithOnConflict(TABLE_ACTIVITY, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Lädt die Digest Sitzung des letzten Abrufs einer ICS Datei
+     * @param feed Adresse der ICS Datei
+     * @param user Nutzername. Wurde die Sitzung mit einem anderen Nutzer aufgebaut, wird sie nicht verwendet.
+     * @return Die Sitzung oder null, falls keine passende gespeichert ist
+     */
+    public DigestContainer loadDigestSession(String feed, String user) {
+
+        if (feed == null || user == null) {
+            return null;
+        }
+
+        Cursor cur = helper.getReadableDatabase().query(TABLE_DIGEST, DIGEST_PROJECTION, COLUMN_FEED + " = ? AND " + COLUMN_USER + " = ?", new String[] {feed, user}, null, null, null);
+
+        try {
+            if (cur.moveToFirst()) {
+                return new DigestContainer(cur.getString(0), cur.getString(1), cur.getString(2), cur.getString(3), cur.getString(4), cur.getInt(5));
+            }
+            return null;
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * Speichert die Digest Sitzung eines Abrufs inkl. des zuletzt verwendeten Nonce-Counts
+     * @param feed Adresse der ICS Datei
+     * @param user Nutzername mit dem die Sitzung aufgebaut wurde
+     * @param session Die Sitzung. Bei null wird eine gespeicherte Sitzung gelöscht.
+     */
+    public void storeDigestSession(String feed, String user, DigestContainer session) {
+
+        if (feed == null) {
+            return;
+        }
+
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        if (session == null || user == null) {
+            db.delete(TABLE_DIGEST, COLUMN_FEED + " = ?", new String[] {feed});
+            return;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_FEED, feed);
+        values.put(COLUMN_USER, user);
+        values.put(COLUMN_REALM, session.getRealm());
+        values.put(COLUMN_NONCE, session.getNonce());
+        values.put(COLUMN_QOP, session.getQop());
+        values.put(COLUMN_OPAQUE, session.getOpaque());
+        values.put(COLUMN_ALGORITHM, session.getAlgorithm());
+        values.put(COLUMN_NC, session.getNc());
+
+        db.insertWithOnConflict(TABLE_DIGEST, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    //=======================================================
+    //==================PRIVATE METHODEN=====================
+    //=======================================================
+
+    /**
+     * Ermittelt die nächste Generationsnummer einer ICS Datei
+     */
+    private int nextGeneration(SQLiteDatabase db, String feed, int calendarId) {
+
+        Cursor cur = db.rawQuery("SELECT MAX(" + COLUMN_GENERATION + ") FROM " + TABLE_ENTRIES + " WHERE " + SELECTION_FEED, feedArgs(feed, calendarId));
+
+        try {
+            if (cur.moveToFirst() && !cur.isNull(0)) {
+                return cur.getInt(0) + 1;
+            }
+            return 1;
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * Schreibt die Zuordnungen mit der angegebenen Generationsnummer. Bestehende Zuordnungen mit gleichem Sync-Schlüssel werden ersetzt.
+     */
+    private void upsertStates(SQLiteDatabase db, String feed, int calendarId, Collection<SyncState> states, int generation) {
+
+        SQLiteStatement upsert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_ENTRIES + " (" + COLUMN_FEED + ", " + COLUMN_CALENDAR_ID + ", " + COLUMN_SYNC_KEY + ", " + COLUMN_EVENT_ID + ", " + COLUMN_CONTENT_HASH + ", " + COLUMN_GENERATION + ") VALUES (?, ?, ?, ?, ?, ?)");
+
+        for (SyncState state : states
+                ) {
+            upsert.clearBindings();
+            upsert.bindString(1, feed);
+            upsert.bindLong(2, calendarId);
+            upsert.bindString(3, state.getSyncKey());
+            upsert.bindLong(4, state.getEventId());
+            upsert.bindLong(5, state.getContentHash());
+            upsert.bindLong(6, generation);
+            upsert.executeInsert();
+        }
+    }
+
+    private static String[] feedArgs(String feed, int calendarId) {
+        return new String[] {feed, String.valueOf(calendarId)};
+    }
+
+    //=======================================================
+    //====================DATENBANK==========================
+    //=======================================================
+
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_ENTRIES + " ("
+                    + COLUMN_FEED + " TEXT NOT NULL, "
+                    + COLUMN_CALENDAR_ID + " INTEGER NOT NULL, "
+                    + COLUMN_SYNC_KEY + " TEXT NOT NULL, "
+                    + COLUMN_EVENT_ID + " INTEGER NOT NULL, "
+                    + COLUMN_CONTENT_HASH + " INTEGER NOT NULL, "
+                    + COLUMN_GENERATION + " INTEGER NOT NULL, "
+                    + "PRIMARY KEY (" + COLUMN_FEED + ", " + COLUMN_CALENDAR_ID + ", " + COLUMN_SYNC_KEY + "))");
+
+            db.execSQL("CREATE TABLE " + TABLE_FEEDS + " ("
+                    + COLUMN_FEED + " TEXT NOT NULL, "
+                    + COLUMN_CALENDAR_ID + " INTEGER NOT NULL, "
+                    + COLUMN_ETAG + " TEXT, "
+                    + COLUMN_LAST_MODIFIED + " TEXT, "
+                    + COLUMN_BODY_HASH + " INTEGER, "
+                    + COLUMN_HORIZON_FROM + " INTEGER, "
+                    + COLUMN_HORIZON_TO + " INTEGER, "
+                    + "PRIMARY KEY (" + COLUMN_FEED + ", " + COLUMN_CALENDAR_ID + "))");
+
+            db.execSQL("CREATE TABLE " + TABLE_DIGEST + " ("
+                    + COLUMN_FEED + " TEXT PRIMARY KEY, "
+                    + COLUMN_USER + " TEXT NOT NULL, "
+                    + COLUMN_REALM + " TEXT, "
+                    + COLUMN_NONCE + " TEXT, "
+                    + COLUMN_QOP + " TEXT, "
+                    + COLUMN_OPAQUE + " TEXT, "
+                    + COLUMN_ALGORITHM + " TEXT, "
+                    + COLUMN_NC + " INTEGER NOT NULL)");
+
+            db.execSQL("CREATE TABLE " + TABLE_ACTIVITY + " ("
+                    + COLUMN_FEED + " TEXT NOT NULL, "
+                    + COLUMN_CALENDAR_ID + " INTEGER NOT NULL, "
+                    + COLUMN_INTERVAL + " INTEGER NOT NULL, "
+                    + "PRIMARY KEY (" + COLUMN_FEED + ", " + COLUMN_CALENDAR_ID + "))");
+
+            db.execSQL("CREATE TABLE " + TABLE_JOURNAL + " ("
+                    + COLUMN_FEED + " TEXT NOT NULL, "
+                    + COLUMN_CALENDAR_ID + " INTEGER NOT NULL, "
+                    + "PRIMARY KEY (" + COLUMN_FEED + ", " + COLUMN_CALENDAR_ID + "))");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // Die Datenbank ist nur ein Zwischenspeicher und kann jederzeit aus dem Kalender neu aufgebaut werden
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ENTRIES);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_FEEDS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_DIGEST);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ACTIVITY);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_JOURNAL);
+            onCreate(db);
+        }
+    }
+}
@@ -21,7 +21,6 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
-import android.arch.lifecycle.MutableLiveData;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
@@ -29,16 +28,13 @@ import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.os.Build;
 import android.os.IBinder;
-import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
-import android.support.v4.content.Loader;
 import android.util.Log;
 import android.widget.Toast;
 
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -48,16 +44,13 @@ import firesoft.de.kalenderadapter.BuildConfig;
 import firesoft.de.kalenderadapter.MainActivity;
 import firesoft.de.kalenderadapter.R;
 import firesoft.de.kalenderadapter.data.ResultWrapper;
-import firesoft.de.kalenderadapter.data.ServerParameter;
-import firesoft.de.kalenderadapter.manager.CalendarManager;
-import firesoft.de.kalenderadapter.manager.PreferencesManager;
-import firesoft.de.kalenderadapter.utility.DataLoader;
 
-public class BackgroundService extends Service implements Loader.OnLoadCompleteListener<ResultWrapper>{
+public class BackgroundService extends Service implements SyncRunner.ISyncListener {
 
-    PreferencesManager pManager;
-    CalendarManager cManager;
-    DataLoader dataLoader;
+    SyncRunner syncRunner;
+
+    // Letzte Start-ID. Der Service wird nur beendet, wenn danach kein weiterer Start eingegangen ist.
+    private int lastStartId;
 
     public final static byte ID = 15;
 
@@ -72,64 +65,29 @@ public class BackgroundService extends Service implements Loader.OnLoadCompleteL
 
         if (BuildConfig.DEBUG) {
             writeToFile("Service started!");
-            Log.d("LOG_SERVICE", "Service activated!");
+            Log.d("LOG_SERVICE", "Service activated! Start: " + startId);
         }
 
-        try {
-
-            // PreferencesManager starten
-            pManager = new PreferencesManager(getApplicationContext());
-            pManager.load();
+        lastStartId = startId;
 
+        if (syncRunner != null && syncRunner.isRunning()) {
+            // Es läuft bereits eine Synchronisation. Der neue Start wird mit dieser zusammengefasst und endet mit ihr.
             if (BuildConfig.DEBUG) {
-                writeToFile("PreferencesManager loaded");
-                Log.d("LOG_SERVICE", "PreferencesManager loaded!");
+                Log.d("LOG_SERVICE", "Sync already running, start " + startId + " coalesced");
             }
+            return Service.START_NOT_STICKY;
+        }
 
-            // CalendarManager starten
-            cManager = new CalendarManager(getApplicationContext(),null);
-            cManager.setActiveCalendar(pManager.getActiveCalendarId());             // Aktiven Kalender laden
-    //        cManager.setEntryIdsFromString(pManager.getEntryIds());                 // Die von der App gesetzten Einträge laden
-            cManager.loadCalendarEntries();                                         // Die Kalender laden
+        try {
 
-            if (BuildConfig.DEBUG) {
-                writeToFile("CalendarManager loaded");
-                Log.d("LOG_SERVICE", "CalendarManager loaded!");
-            }
+            syncRunner = new SyncRunner(getApplicationContext(), this);
 
-            // Prüfen, ob alle benötigten Daten vorliegen
-            if (pManager.getUrl().equals("") || pManager.getPassword().equals("") || pManager.getUrl().equals("") || cManager.getActiveCalendar() == null) {
+            if (!syncRunner.start()) {
                 // Es fehlen Daten
+                finishRun();
                 return Service.START_NOT_STICKY; // Aussage für das OS: Service nicht neustarten. Siehe https://stackoverflow.com/questions/9093271/start-sticky-and-start-not-sticky
             }
 
-            // Die einzelnen Parameter hinzufügen und im Preferences Manager speichern
-            ArrayList<ServerParameter> parameters = new ArrayList<>();
-            ServerParameter param = new ServerParameter("url", pManager.getUrl());
-            parameters.add(param);
-
-            param = new ServerParameter("user", pManager.getUser());
-            parameters.add(param);
-
-            param = new ServerParameter("pw", pManager.getPassword());
-            parameters.add(param);
-
-            // Kommunikationskanal mit Backgroundthreads. Wird im BackgroundService nicht benötigt. Muss aber dem DataLoader mitgegeben werden.
-            MutableLiveData<String> messageFromBackground = new MutableLiveData<>();
-            MutableLiveData<Integer> valFromBackground = new MutableLiveData<>();
-            MutableLiveData<Integer> maxFromBackground = new MutableLiveData<>();
-
-            dataLoader = new DataLoader(parameters,getApplicationContext(),cManager,messageFromBackground, valFromBackground, maxFromBackground, pManager,false);
-
-            if (BuildConfig.DEBUG) {
-                writeToFile("DataLoader initalized!");
-                Log.d("LOG_SERVICE", "DataLoader initalized!");
-            }
-
-            // Basierend auf https://stackoverflow.com/questions/8696146/can-you-use-a-loadermanager-from-a-service/24393728
-            dataLoader.registerListener(1,this); // 1 = Marker für MainLoader (im AsyncTaskManager definiert)
-            dataLoader.startLoading();
-
             if (BuildConfig.DEBUG) {
                 writeToFile("DataLoader running!");
                 Log.d("LOG_SERVICE", "DataLoader running!");
@@ -141,21 +99,29 @@ public class BackgroundService extends Service implements Loader.OnLoadCompleteL
                 writeToFile("Error! " + e.getMessage());
             }
             e.printStackTrace();
+
+            finishRun();
         }
 
-        return super.onStartCommand(intent, flags, startId);
+        // Wird der Prozess während eines Laufs beendet, startet der nächste geplante Lauf (bzw. der nächste Versuch) die Synchronisation erneut
+        return Service.START_NOT_STICKY;
     }
 
     /**
      * Wird aufgerufen, wenn die Synchronisation mit dem Server abgeschlossen wurde
      */
     @Override
-    public void onLoadComplete(@NonNull Loader<ResultWrapper> loader, @Nullable ResultWrapper data) {
+    public void onSyncFinished(@Nullable ResultWrapper data) {
+
+        finishRun();
 
         if (data == null) {
             return;
         }
 
+        // Bei vorübergehenden Fehlern wird ein erneuter Versuch geplant, statt bis zum nächsten Intervall zu warten
+        RetryScheduler.onSyncFinished(getApplicationContext(), data.getException());
+
         if (data.getException() != null) {
             // Es ist ein Fehler aufgetreten. Machen kann man jetzt aber nicht wirklich viel.
             Toast.makeText(getApplicationContext(), "KalenderAdapter: " + getString(R.string.error_background_service) + data.getException().getMessage(), Toast.LENGTH_LONG).show();
@@ -174,6 +140,19 @@ public class BackgroundService extends Service implements Loader.OnLoadCompleteL
 
     }
 
+    /**
+     * Schließt einen Lauf ab und beendet den Service, sofern seit dem letzten Start kein weiterer eingegangen ist
+     */
+    private void finishRun() {
+
+        if (syncRunner != null) {
+            syncRunner.cancel();
+            syncRunner = null;
+        }
+
+        stopSelf(lastStartId);
+    }
+
     private void writeToFile(String data) {
 
         String message;
@@ -197,12 +176,13 @@ public class BackgroundService extends Service implements Loader.OnLoadCompleteL
     public void onDestroy() {
 
         // Loader stoppen
-        if (dataLoader != null) {
-            dataLoader.unregisterListener(this);
-            dataLoader.cancelLoad();
-            dataLoader.stopLoading();
+        if (syncRunner != null) {
+            syncRunner.cancel();
+            syncRunner = null;
         }
 
+        super.onDestroy();
+
     }
 
     /**
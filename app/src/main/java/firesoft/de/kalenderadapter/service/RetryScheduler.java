@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.service;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobScheduler;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.Random;
+
+import firesoft.de.kalenderadapter.BuildConfig;
+import firesoft.de.kalenderadapter.data.FeedException;
+import firesoft.de.kalenderadapter.data.SyncInterruptedException;
+
+import static android.content.Context.ALARM_SERVICE;
+
+/**
+ * Plant nach einer fehlgeschlagenen Synchronisation einen erneuten Versuch. Der Abstand verdoppelt sich mit jedem Versuch (exponentielles Backoff) und wird zufällig gestreut, damit nicht alle Geräte gleichzeitig anfragen.
+ * Nur vorübergehende Fehler (Netzwerk, Serverfehler) werden wiederholt. Nach MAX_ATTEMPTS Versuchen wird auf das reguläre Intervall gewartet.
+ * Der Versuch wird als einmaliger Job des SyncJobService geplant. Damit gelten dieselben Bedingungen (Netzwerk, ggf. WLAN und Ladegerät) wie für die reguläre Synchronisation.
+ */
+public class RetryScheduler {
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    // ID des Jobs. Muss sich von den IDs der regulären Synchronisation unterscheiden (siehe ServiceUtil), damit deren Planung nicht überschrieben wird.
+    static final int RETRY_JOB_ID = BackgroundService.ID + 200;
+
+    // Request-Code des PendingIntent, mit dem ältere Versionen der App den Versuch über den AlarmManager geplant haben
+    private static final int LEGACY_RETRY_ID = BackgroundService.ID + 1;
+
+    static final long BASE_DELAY = 5 * 60 * 1000;           // 5 Minuten
+    static final long MAX_DELAY = 6 * 60 * 60 * 1000;       // 6 Stunden
+    static final int MAX_ATTEMPTS = 6;
+
+    // Wartezeit bis zur Fortsetzung eines Imports, der sein Zeitbudget aufgebraucht hat
+    static final long RESUME_DELAY = 60 * 1000;             // 1 Minute
+
+    private static final String PREFS = "firesoft.de.kalenderadapter.retry";
+    private static final String ATTEMPT = "attempt";
+
+    //=======================================================
+    //===================PUBLIC METHODEN=====================
+    //=======================================================
+
+    /**
+     * Wertet das Ergebnis einer Synchronisation aus. Bei einem vorübergehenden Fehler wird ein erneuter Versuch geplant, sonst wird der Zähler zurückgesetzt.
+     * Wurde der Import wegen des Zeitbudgets unterbrochen, wird er zeitnah fortgesetzt. Das zählt nicht als Versuch und lässt den Zähler unverändert.
+     * @param context Context des Aufrufs
+     * @param error Der aufgetretene Fehler oder null, falls die Synchronisation erfolgreich war
+     * @return True, falls ein erneuter Versuch geplant wurde
+     */
+    public static boolean onSyncFinished(Context context, Exception error) {
+
+        if (error instanceof SyncInterruptedException) {
+            if (BuildConfig.DEBUG) {
+                Log.d("LOG_SERVICE", "Sync interrupted, resume scheduled in " + (RESUME_DELAY / 1000) + " s");
+            }
+
+            return ServiceUtil.scheduleSync(context, RETRY_JOB_ID, RESUME_DELAY);
+        }
+
+        if (error == null || !FeedException.isTransient(error)) {
+            // Erfolgreich oder ein Fehler der sich durch Wiederholen nicht behebt (bspw. falsche Zugangsdaten)
+            reset(context);
+            return false;
+        }
+
+        SharedPreferences preferences = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        int attempt = preferences.getInt(ATTEMPT, 0);
+
+        if (attempt >= MAX_ATTEMPTS) {
+            // Aufgeben und auf das reguläre Intervall warten
+            reset(context);
+            return false;
+        }
+
+        long delay = computeDelay(attempt, new Random());
+
+        if (!ServiceUtil.scheduleSync(context, RETRY_JOB_ID, delay)) {
+            return false;
+        }
+
+        preferences.edit().putInt(ATTEMPT, attempt + 1).apply();
+
+        if (BuildConfig.DEBUG) {
+            Log.d("LOG_SERVICE", "Retry " + (attempt + 1) + " scheduled in " + (delay / 1000) + " s");
+        }
+
+        return true;
+    }
+
+    /**
+     * Setzt den Zähler zurück und entfernt einen geplanten erneuten Versuch
+     */
+    public static void reset(Context context) {
+
+        context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit().remove(ATTEMPT).apply();
+
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler != null) {
+            jobScheduler.cancel(RETRY_JOB_ID);
+        }
+
+        // Alarm älterer Versionen der App entfernen
+        Intent serviceIntent = new Intent(context, BackgroundService.class);
+        PendingIntent pendingIntent = PendingIntent.getService(context, LEGACY_RETRY_ID, serviceIntent, PendingIntent.FLAG_NO_CREATE);
+
+        if (pendingIntent != null) {
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(ALARM_SERVICE);
+            if (alarmManager != null) {
+                alarmManager.cancel(pendingIntent);
+            }
+            pendingIntent.cancel();
+        }
+    }
+
+    //=======================================================
+    //==================INTERNE METHODEN=====================
+    //=======================================================
+
+    /**
+     * Berechnet die Wartezeit bis zum nächsten Versuch. Die Obergrenze verdoppelt sich mit jedem Versuch bis MAX_DELAY, gewartet wird zufällig zwischen der Hälfte und der vollen Obergrenze.
+     * @param attempt Anzahl der bisherigen Versuche (0 = erster Versuch)
+     * @param random Zufallsgenerator für die Streuung
+     * @return Wartezeit in Millisekunden
+     */
+    static long computeDelay(int attempt, Random random) {
+
+        long ceiling = MAX_DELAY;
+
+        // Überlauf bei großen Versuchszahlen vermeiden
+        if (attempt < 30) {
+            ceiling = Math.min(MAX_DELAY, BASE_DELAY << attempt);
+        }
+
+        long half = ceiling / 2;
+
+        return half + (long) (random.nextDouble() * half);
+    }
+}
@@ -17,63 +17,56 @@ package firesoft.de.kalenderadapter.service;
 
 import android.app.AlarmManager;
 import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
 import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
 
 import java.text.ParseException;
-import java.util.Calendar;
+import java.util.ArrayList;
 
 import firesoft.de.kalenderadapter.BuildConfig;
+import firesoft.de.kalenderadapter.data.FeedConfig;
 import firesoft.de.kalenderadapter.manager.PreferencesManager;
+import firesoft.de.kalenderadapter.manager.SyncStateManager;
+import firesoft.de.kalenderadapter.utility.AdaptiveInterval;
 import firesoft.de.kalenderadapter.utility.DateAndTimeConversion;
 
 import static android.content.Context.ALARM_SERVICE;
 
 public class ServiceUtil extends BroadcastReceiver {
 
-    private static final int ALARMMANAGER_MODE = AlarmManager.RTC;
+    // IDs der Synchronisationsjobs. Die Läufe planen sich abwechselnd gegenseitig ein (siehe scheduleNextSync).
+    private static final int SYNC_JOB_ID = BackgroundService.ID;
+    private static final int SYNC_JOB_ID_ALTERNATE = BackgroundService.ID + 100;
 
     /**
-     * Startet einen Alarm im AlarmManager welcher einen Service startet. Dieser lädt die aktuellen Daten vom Server. Die Methode ist veraltet! Es können keine Werte für Startzeit und Intervall übergeben werden.
+     * Plant die Synchronisation um 03:00 Uhr im Abstand von 24 Stunden. Die Methode ist veraltet! Es können keine Werte für Startzeit und Intervall übergeben werden.
      * @param context Context des Aufrufs
      */
     @Deprecated
     public static void startService(Context context) {
 
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(ALARM_SERVICE);
-
-        Intent serviceIntent = new Intent(context, BackgroundService.class);
-        PendingIntent startServiceIntent = PendingIntent.getService(context,BackgroundService.ID,serviceIntent,PendingIntent.FLAG_UPDATE_CURRENT);
-
         //Server wird alle 24 Stunden um 03:00 Uhr überprüft
-        Calendar calendar = Calendar.getInstance();
-
-        calendar.set(Calendar.HOUR_OF_DAY, 3);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-
-        //AlarmManager aktivieren
-        if (alarmManager != null) {
-            alarmManager.setRepeating(ALARMMANAGER_MODE,calendar.getTimeInMillis(),AlarmManager.INTERVAL_DAY,startServiceIntent);
+        try {
+            startService(context, 3 * 60 * 60 * 1000, AlarmManager.INTERVAL_DAY);
+        } catch (ParseException e) {
+            e.printStackTrace();
         }
 
     }
 
     /**
-     * Startet einen Alarm im AlarmManager welcher einen Service startet. Dieser lädt die aktuellen Daten vom Server. Die Startzeit und das Intervall können definiert werden
+     * Plant die Synchronisation über den JobScheduler. Der erste Lauf erfolgt zur Startzeit, danach im angegebenen Intervall. Ein Lauf startet erst, wenn eine Netzwerkverbindung besteht.
      * @param context Context des Aufrufs
      * @param start Startzeit in Millisekunden (gezählt von 00:00 Uhr)
-     * @param interval Ausführungsintervall in Millisekunden
+     * @param interval Ausführungsintervall in Millisekunden. Wird bei jedem Lauf erneut aus dem PreferencesManager gelesen.
      */
     public static void startService(Context context, long start, long interval) throws ParseException{
 
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(ALARM_SERVICE);
-
-        Intent serviceIntent = new Intent(context, BackgroundService.class);
-        PendingIntent startServiceIntent = PendingIntent.getService(context,BackgroundService.ID,serviceIntent,PendingIntent.FLAG_UPDATE_CURRENT);
-
         // Prüfen, ob das Intervall null ist. Falls ja -> auf Standardwert setzen
         if (interval == 0) {
             interval = PreferencesManager.DEFAULT_SYNC_INTERVAL;
@@ -82,6 +75,9 @@ public class ServiceUtil extends BroadcastReceiver {
         // Epoch hinzufügen
         long attachedStart = DateAndTimeConversion.attachEpoch(start);
 
+        // Bisherige Planung (auch Alarme älterer Versionen) entfernen
+        stopService(context);
+
         if (BuildConfig.DEBUG) {
             Log.d("LOG_SERVICE", "Service time set!");
             Log.d("LOG_SERVICE", "");
@@ -90,20 +86,109 @@ public class ServiceUtil extends BroadcastReceiver {
             Log.d("LOG_SERVICE", "Interval: " + String.valueOf(interval)+ " ms | " + String.valueOf(interval/1000) + " s");
         }
 
-        //AlarmManager aktivieren
-        if (alarmManager != null) {
-            alarmManager.setRepeating(ALARMMANAGER_MODE ,attachedStart,interval,startServiceIntent);
+        scheduleSync(context, SYNC_JOB_ID, Math.max(0, attachedStart - System.currentTimeMillis()));
+
+    }
+
+    /**
+     * Plant den nächsten Lauf der Synchronisation im eingestellten bzw. im angepassten Intervall. Wird zu Beginn jedes Laufs vom SyncJobService aufgerufen.
+     * @param context Context des Aufrufs
+     * @param currentJobId ID des gerade laufenden Jobs. Der nächste Lauf erhält die andere ID.
+     */
+    static void scheduleNextSync(Context context, int currentJobId) {
+
+        PreferencesManager pManager = new PreferencesManager(context);
+        pManager.load();
+
+        long interval = pManager.getSyncInterval();
+        if (interval == 0) {
+            interval = PreferencesManager.DEFAULT_SYNC_INTERVAL;
+        }
+
+        if (pManager.isAdaptiveSyncActivated()) {
+            interval = getAdaptiveInterval(context, pManager, interval);
+        }
+
+        scheduleSync(context, currentJobId == SYNC_JOB_ID ? SYNC_JOB_ID_ALTERNATE : SYNC_JOB_ID, interval);
+    }
+
+    /**
+     * Ermittelt das kürzeste angepasste Intervall aller konfigurierten ICS Dateien. Die Datei mit den häufigsten Änderungen bestimmt damit den nächsten Lauf.
+     * @param configured Vom Nutzer eingestelltes Intervall. Wird für Dateien ohne beobachtete Änderungen verwendet.
+     * @return Intervall in Millisekunden
+     */
+    private static long getAdaptiveInterval(Context context, PreferencesManager pManager, long configured) {
+
+        ArrayList<FeedConfig> feeds = new ArrayList<>();
+        feeds.add(new FeedConfig(pManager.getUrl(), pManager.getUser(), pManager.getPassword(), pManager.getActiveCalendarId()));
+        feeds.addAll(pManager.getAdditionalFeeds());
+
+        SyncStateManager syncState = new SyncStateManager(context);
+
+        long interval = Long.MAX_VALUE;
+
+        for (FeedConfig feed : feeds
+                ) {
+            Long feedInterval = syncState.loadAdaptiveInterval(feed.getUrl(), feed.getCalendarId());
+            interval = Math.min(interval, feedInterval != null ? feedInterval : configured);
+        }
+
+        // Das eingestellte Intervall kann sich seit der Berechnung geändert haben
+        return AdaptiveInterval.clamp(interval, configured);
+    }
+
+    /**
+     * Plant einen einzelnen Lauf des SyncJobService. Es gelten die eingestellten Bedingungen (Netzwerk, ggf. WLAN und Ladegerät).
+     * @param context Context des Aufrufs
+     * @param jobId ID des Jobs
+     * @param delay Frühester Start in Millisekunden ab jetzt
+     * @return False, falls der JobScheduler nicht verfügbar ist oder den Job abgelehnt hat
+     */
+    static boolean scheduleSync(Context context, int jobId, long delay) {
+
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+        if (jobScheduler == null) {
+            return false;
         }
 
+        PreferencesManager pManager = new PreferencesManager(context);
+        pManager.load();
+
+        JobInfo job = new JobInfo.Builder(jobId, new ComponentName(context, SyncJobService.class))
+                .setMinimumLatency(delay)
+                .setRequiredNetworkType(pManager.isSyncUnmeteredOnly() ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY)
+                .setRequiresCharging(pManager.isSyncChargingOnly())
+                .setPersisted(true)
+                .build();
+
+        boolean scheduled = jobScheduler.schedule(job) == JobScheduler.RESULT_SUCCESS;
+
+        if (BuildConfig.DEBUG) {
+            Log.d("LOG_SERVICE", "Sync job " + jobId + " scheduled in " + (delay / 1000) + " s");
+        }
+
+        return scheduled;
     }
 
     public static void stopService(Context context) {
 
         Log.d("LOG_SERVICE", "Stopping!");
 
+        // Geplante Wiederholungen nach Fehlern ebenfalls entfernen
+        RetryScheduler.reset(context);
+
         // https://stackoverflow.com/questions/47545634/how-to-stop-service-using-alarmmanager
         // https://stackoverflow.com/questions/14485368/delete-alarm-from-alarmmanager-using-cancel-android
 
+        // Geplante Jobs entfernen
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler != null) {
+            jobScheduler.cancel(SYNC_JOB_ID);
+            jobScheduler.cancel(SYNC_JOB_ID_ALTERNATE);
+        }
+
+        // Alarme älterer Versionen der App entfernen
         Intent serviceIntent = new Intent(context, BackgroundService.class);
         AlarmManager alarmManager = (AlarmManager) context.getSystemService(ALARM_SERVICE);
 
@@ -127,17 +212,41 @@ public class ServiceUtil extends BroadcastReceiver {
         if (intent != null && intent.getAction() != null) {
             // Wird aufgerufen, wenn das Telefon neugestartet wird
             if (intent.getAction().equals("android.intent.action.BOOT_COMPLETED")) {
-                startService(context);
+                // Die Planung wird mit den aktuellen Einstellungen erneuert, sofern der Nutzer den Service nicht deaktiviert hat
+                PreferencesManager pManager = new PreferencesManager(context);
+                pManager.load();
+
+                if (!pManager.isSyncDisabled()) {
+                    try {
+                        startService(context, pManager.getSyncFrom(), pManager.getSyncInterval());
+                    } catch (ParseException e) {
+                        e.printStackTrace();
+                    }
+                }
             }
         }
     }
 
     /**
-     * Prüft, ob der Hintergrundservice läuft oder nicht. Basiert auf https://stackoverflow.com/questions/600207/how-to-check-if-a-service-is-running-on-android
+     * Prüft, ob die Synchronisation geplant ist oder nicht. Basiert auf https://stackoverflow.com/questions/600207/how-to-check-if-a-service-is-running-on-android
      */
     public static boolean isServiceRunning(Context context) {
+
+        boolean res = false;
+
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler != null) {
+            for (JobInfo job : jobScheduler.getAllPendingJobs()
+                    ) {
+                if (job.getId() == SYNC_JOB_ID || job.getId() == SYNC_JOB_ID_ALTERNATE) {
+                    res = true;
+                    break;
+                }
+            }
+        }
+
         //https://stackoverflow.com/questions/4556670/how-to-check-if-alarmmanager-already-has-an-alarm-set
-        boolean res = (PendingIntent.getService(context, BackgroundService.ID, new Intent(context,BackgroundService.class), PendingIntent.FLAG_NO_CREATE) != null);
+        res |= (PendingIntent.getService(context, BackgroundService.ID, new Intent(context,BackgroundService.class), PendingIntent.FLAG_NO_CREATE) != null);
 
         if (res && BuildConfig.DEBUG) {
             Log.d("LOG_SERVICE", "Checked service state. Current: active!");
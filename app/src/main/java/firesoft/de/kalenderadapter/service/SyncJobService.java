@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.service;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import firesoft.de.kalenderadapter.BuildConfig;
+import firesoft.de.kalenderadapter.data.ResultWrapper;
+
+/**
+ * Führt die über den JobScheduler geplante Synchronisation aus. Der JobScheduler startet den Job erst, wenn die Bedingungen (Netzwerk, ggf. WLAN und Ladegerät) erfüllt sind.
+ * Zu Beginn jedes Laufs wird der nächste Lauf geplant (siehe ServiceUtil.scheduleNextSync).
+ */
+public class SyncJobService extends JobService implements SyncRunner.ISyncListener {
+
+    //=======================================================
+    //=====================VARIABLEN=========================
+    //=======================================================
+
+    private SyncRunner syncRunner;
+    private JobParameters jobParameters;
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+
+        if (BuildConfig.DEBUG) {
+            Log.d("LOG_SERVICE", "Sync job started! Job: " + params.getJobId());
+        }
+
+        // Nächsten Lauf planen. Dafür wird die andere Job-ID verwendet, da ein neuer Job mit derselben ID den laufenden Job beenden würde.
+        // Ein erneuter Versuch nach einem Fehler (siehe RetryScheduler) läuft zusätzlich zur regulären Planung und plant daher nichts neu.
+        if (params.getJobId() != RetryScheduler.RETRY_JOB_ID) {
+            ServiceUtil.scheduleNextSync(getApplicationContext(), params.getJobId());
+        }
+
+        jobParameters = params;
+        syncRunner = new SyncRunner(getApplicationContext(), this);
+
+        // Bei fehlenden Einstellungen gibt es nichts zu tun. False = Job ist sofort beendet.
+        return syncRunner.start();
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+
+        // Der JobScheduler bricht den Lauf ab (bspw. weil die Netzwerkverbindung weggefallen ist)
+        if (syncRunner != null) {
+            syncRunner.cancel();
+            syncRunner = null;
+        }
+
+        // Der Job wird nicht erneut ausgeführt, der nächste Lauf ist bereits geplant
+        return false;
+    }
+
+    /**
+     * Wird aufgerufen, wenn die Synchronisation mit dem Server abgeschlossen wurde
+     */
+    @Override
+    public void onSyncFinished(@Nullable ResultWrapper data) {
+
+        if (data != null) {
+            // Bei vorübergehenden Fehlern wird ein erneuter Versuch geplant, statt bis zum nächsten Intervall zu warten
+            RetryScheduler.onSyncFinished(getApplicationContext(), data.getException());
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.d("LOG_SERVICE", "Sync job completed!");
+        }
+
+        syncRunner = null;
+        jobFinished(jobParameters, false);
+    }
+}
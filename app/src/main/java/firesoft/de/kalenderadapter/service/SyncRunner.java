@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.service;
+
+import android.arch.lifecycle.MutableLiveData;
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.Loader;
+
+import java.util.ArrayList;
+
+import firesoft.de.kalenderadapter.data.ResultWrapper;
+import firesoft.de.kalenderadapter.data.ServerParameter;
+import firesoft.de.kalenderadapter.manager.CalendarManager;
+import firesoft.de.kalenderadapter.manager.PreferencesManager;
+import firesoft.de.kalenderadapter.utility.DataLoader;
+
+/**
+ * Führt eine Synchronisation im Hintergrund aus. Lädt die Einstellungen, erstellt den DataLoader und meldet das Ergebnis an den Listener.
+ * Wird vom BackgroundService und vom SyncJobService verwendet.
+ */
+public class SyncRunner implements Loader.OnLoadCompleteListener<ResultWrapper>, Loader.OnLoadCanceledListener<ResultWrapper> {
+
+    //=======================================================
+    //=====================VARIABLEN=========================
+    //=======================================================
+
+    private final Context context;
+    private final ISyncListener listener;
+
+    private DataLoader dataLoader;
+    private CalendarManager cManager;
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    // Marker für MainLoader (im AsyncTaskManager definiert)
+    private static final int LOADER_ID = 1;
+
+    //=======================================================
+    //====================KONSTRUKTOR========================
+    //=======================================================
+
+    /**
+     * Erstellt eine neue Instanz
+     * @param context Context der Anwendung
+     * @param listener Wird nach Abschluss der Synchronisation aufgerufen
+     */
+    public SyncRunner(Context context, ISyncListener listener) {
+        this.context = context;
+        this.listener = listener;
+    }
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    /**
+     * Startet die Synchronisation
+     * @return False, falls Einstellungen fehlen und daher nichts gestartet wurde
+     */
+    public boolean start() {
+
+        // PreferencesManager starten
+        PreferencesManager pManager = new PreferencesManager(context);
+        pManager.load();
+
+        // CalendarManager starten und aktiven Kalender laden. Die bestehenden Einträge lädt der DataLoader selbst, sofern er sie benötigt.
+        cManager = new CalendarManager(context, null);
+        cManager.setActiveCalendar(pManager.getActiveCalendarId());
+
+        // Prüfen, ob alle benötigten Daten vorliegen
+        if (pManager.getUrl().equals("") || pManager.getPassword().equals("") || cManager.getActiveCalendar() == null) {
+            cManager = null;
+            return false;
+        }
+
+        // Die einzelnen Parameter hinzufügen
+        ArrayList<ServerParameter> parameters = new ArrayList<>();
+        parameters.add(new ServerParameter("url", pManager.getUrl()));
+        parameters.add(new ServerParameter("user", pManager.getUser()));
+        parameters.add(new ServerParameter("pw", pManager.getPassword()));
+
+        // Kommunikationskanal mit Backgroundthreads. Wird im Hintergrund nicht benötigt. Muss aber dem DataLoader mitgegeben werden.
+        MutableLiveData<String> messageFromBackground = new MutableLiveData<>();
+        MutableLiveData<Integer> valFromBackground = new MutableLiveData<>();
+        MutableLiveData<Integer> maxFromBackground = new MutableLiveData<>();
+
+        dataLoader = new DataLoader(parameters, context, cManager, messageFromBackground, valFromBackground, maxFromBackground, pManager, false);
+
+        // Basierend auf https://stackoverflow.com/questions/8696146/can-you-use-a-loadermanager-from-a-service/24393728
+        dataLoader.registerListener(LOADER_ID, this);
+        dataLoader.registerOnLoadCanceledListener(this);
+        dataLoader.startLoading();
+
+        return true;
+    }
+
+    /**
+     * Bricht eine laufende Synchronisation ab. Der Listener wird nicht mehr aufgerufen.
+     * Der Hintergrundthread beendet den Import erst beim nächsten Checkpoint. Bis dahin arbeitet er noch mit dem CalendarManager,
+     * daher werden DataLoader und CalendarManager erst in onLoadCanceled freigegeben.
+     */
+    public void cancel() {
+
+        if (dataLoader == null) {
+            return;
+        }
+
+        dataLoader.unregisterListener(this);
+
+        if (!dataLoader.cancelLoad()) {
+            // Es läuft kein Hintergrundthread (mehr), der auf den CalendarManager zugreift
+            release();
+        }
+    }
+
+    /**
+     * Gibt an, ob gerade eine Synchronisation läuft
+     */
+    public boolean isRunning() {
+        return dataLoader != null;
+    }
+
+    /**
+     * Wird aufgerufen, wenn die Synchronisation mit dem Server abgeschlossen wurde
+     */
+    @Override
+    public void onLoadComplete(@NonNull Loader<ResultWrapper> loader, @Nullable ResultWrapper data) {
+
+        // Loader und geladene Einträge werden bis zum nächsten Lauf nicht mehr benötigt
+        loader.unregisterListener(this);
+        release();
+
+        listener.onSyncFinished(data);
+    }
+
+    /**
+     * Wird aufgerufen, nachdem ein abgebrochener Hintergrundthread zurückgekehrt ist
+     */
+    @Override
+    public void onLoadCanceled(@NonNull Loader<ResultWrapper> loader) {
+        release();
+    }
+
+    //=======================================================
+    //==================PRIVATE METHODEN=====================
+    //=======================================================
+
+    /**
+     * Gibt den DataLoader und die Einträge des CalendarManagers frei. Darf erst aufgerufen werden, wenn kein Hintergrundthread mehr läuft.
+     * Der Listener für das Ergebnis muss bereits abgemeldet sein.
+     */
+    private void release() {
+
+        if (dataLoader != null) {
+            dataLoader.unregisterOnLoadCanceledListener(this);
+            dataLoader.stopLoading();
+            dataLoader.reset();
+            dataLoader = null;
+        }
+
+        if (cManager != null) {
+            cManager.releaseCalendarEntries();
+            cManager = null;
+        }
+    }
+
+    //=======================================================
+    //=====================INTERFACES========================
+    //=======================================================
+
+    /**
+     * Empfänger für das Ergebnis der Synchronisation
+     */
+    public interface ISyncListener {
+
+        /**
+         * @param result Ergebnis des DataLoader. Kann null sein.
+         */
+        void onSyncFinished(@Nullable ResultWrapper result);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+/**
+ * Berechnet das Synchronisationsintervall einer ICS Datei anhand ihrer beobachteten Änderungen.
+ * Hat sich die Datei seit dem letzten Abruf geändert, wird das Intervall halbiert, sonst um die Hälfte verlängert. Das Intervall bleibt dabei innerhalb eines Bereichs um das eingestellte Intervall.
+ */
+public class AdaptiveInterval {
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    /**
+     * Kürzestes Intervall. Häufiger startet der JobScheduler ohnehin nicht zuverlässig.
+     */
+    public static final long MIN_INTERVAL = 15 * 60 * 1000;
+
+    /**
+     * Faktor um den das Intervall höchstens vom eingestellten Intervall abweichen darf (in beide Richtungen)
+     */
+    public static final int RANGE_FACTOR = 4;
+
+    //=======================================================
+    //===================PUBLIC METHODEN=====================
+    //=======================================================
+
+    /**
+     * Berechnet das Intervall für den nächsten Abruf
+     * @param current Bisheriges Intervall in Millisekunden. Bei 0 oder weniger wird vom eingestellten Intervall ausgegangen.
+     * @param changed Gibt an, ob sich die Datei beim letzten Abruf geändert hat
+     * @param configured Vom Nutzer eingestelltes Intervall in Millisekunden
+     * @return Neues Intervall in Millisekunden
+     */
+    public static long next(long current, boolean changed, long configured) {
+
+        if (current <= 0) {
+            current = configured;
+        }
+
+        long next;
+
+        if (changed) {
+            next = current / 2;
+        }
+        else {
+            next = current + current / 2;
+        }
+
+        return clamp(next, configured);
+    }
+
+    /**
+     * Begrenzt ein Intervall auf den zulässigen Bereich um das eingestellte Intervall
+     * @param interval Intervall in Millisekunden
+     * @param configured Vom Nutzer eingestelltes Intervall in Millisekunden
+     */
+    public static long clamp(long interval, long configured) {
+
+        long min = Math.max(MIN_INTERVAL, configured / RANGE_FACTOR);
+        long max = Math.max(min, configured * RANGE_FACTOR);
+
+        return Math.min(max, Math.max(min, interval));
+    }
+}
@@ -22,29 +22,42 @@ import android.provider.CalendarContract;
 import android.support.v4.content.AsyncTaskLoader;
 import android.util.Log;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import firesoft.de.kalenderadapter.BuildConfig;
 import firesoft.de.kalenderadapter.R;
 import firesoft.de.kalenderadapter.data.CustomCalendarEntry;
+import firesoft.de.kalenderadapter.data.FeedConfig;
+import firesoft.de.kalenderadapter.data.FeedException;
 import firesoft.de.kalenderadapter.data.ResultWrapper;
 import firesoft.de.kalenderadapter.data.ServerParameter;
+import firesoft.de.kalenderadapter.data.SyncHorizon;
+import firesoft.de.kalenderadapter.data.SyncInterruptedException;
+import firesoft.de.kalenderadapter.interfaces.ICheckpoint;
 import firesoft.de.kalenderadapter.interfaces.IErrorCallback;
+import firesoft.de.kalenderadapter.interfaces.IEventSource;
 import firesoft.de.kalenderadapter.manager.CalendarManager;
 import firesoft.de.kalenderadapter.manager.PreferencesManager;
-import firesoft.de.libfirenet.authentication.Digest;
-import firesoft.de.libfirenet.http.HttpWorker;
-import firesoft.de.libfirenet.method.GET;
-import firesoft.de.libfirenet.util.HttpState;
+import firesoft.de.kalenderadapter.manager.SyncCoordinator;
+import firesoft.de.kalenderadapter.manager.SyncStateManager;
 
 /**
  * Diese Klasse ist als Loader für den Download und das Eintrage der Events zuständig. Über ein IErrorCallback Interface werden Nachrichten an die UI übergeben.
  */
-public class DataLoader extends AsyncTaskLoader<ResultWrapper> implements IErrorCallback {
+public class DataLoader extends AsyncTaskLoader<ResultWrapper> implements IErrorCallback, ICheckpoint {
 
     //=======================================================
     //=====================VARIABLEN=========================
@@ -58,6 +71,17 @@ public class DataLoader extends AsyncTaskLoader<ResultWrapper> implements IError
     private boolean managed;
     private PreferencesManager pManager;
 
+    // Verhindert, dass Oberfläche und Hintergrundservice gleichzeitig importieren. Fortschrittsmeldungen laufen über den Coordinator an alle wartenden Loader.
+    private final SyncCoordinator coordinator = SyncCoordinator.getInstance();
+
+    // Zeitpunkt ab dem der Import am nächsten Checkpoint beendet wird. 0 = kein Zeitbudget.
+    private volatile long deadline;
+
+    // Maximale Anzahl gleichzeitiger Downloads beim Import mehrerer ICS Dateien
+    private static final int MAX_PARALLEL_FEEDS = 3;
+
+    private static final int SPOOL_BUFFER_SIZE = 8192;
+
     //=======================================================
     //====================KONSTRUKTOR========================
     //=======================================================
@@ -91,21 +115,15 @@ public class DataLoader extends AsyncTaskLoader<ResultWrapper> implements IError
     //=======================================================
 
     /**
-     * Lädt die Daten vom Server
+     * Lädt die Daten vom Server. Läuft bereits eine Synchronisation mit denselben Daten (bspw. im Hintergrundservice), wird deren Ergebnis übernommen.
      */
     @Override
     public ResultWrapper loadInBackground() {
 
-        String serverResponse = null;
-
         String url = null;
         String user = null;
         String pass = null;
 
-        // Variablen für Feedback an Nutzer
-        int addedEntries = 0;
-        int deletedEntries = 0;
-
         for (ServerParameter param : params
                 ) {
 
@@ -127,163 +145,645 @@ public class DataLoader extends AsyncTaskLoader<ResultWrapper> implements IError
 
         }
 
-        // Passenden Authenticator erstellen
-        Digest authenticator = new Digest(user, pass);
+        final String fUrl = url;
+        final String fUser = user;
+        final String fPass = pass;
+
+        String key = url + "\n" + user + "\n" + pass + "\n" + cManager.getActiveCalendar().getId();
+
+        // Im Hintergrund steht nur ein begrenztes Zeitfenster zur Verfügung. Der Import endet vorher sauber und wird beim nächsten Lauf fortgesetzt.
+        // Das Zeitbudget gilt bereits für das Warten auf eine laufende Synchronisation.
+        // Der Import über die Oberfläche (managed, siehe AsyncTaskManager) läuft bewusst ohne Zeitbudget: Er unterliegt nicht dem Zeitlimit des JobSchedulers und der Nutzer kann ihn jederzeit selbst abbrechen.
+        long budget = pManager.getSyncTimeBudget();
+        deadline = (!managed && budget > 0) ? System.currentTimeMillis() + budget : 0;
+
+        ResultWrapper result = coordinator.run(key, new Callable<ResultWrapper>() {
+            @Override
+            public ResultWrapper call() {
+                return load(fUrl, fUser, fPass);
+            }
+        }, this, this);
+
+        if (result == null) {
+            // Der Loader wurde beendet, während er auf eine andere Synchronisation gewartet hat
+            return new ResultWrapper(new SyncInterruptedException(getContext().getString(R.string.info_sync_interrupted)));
+        }
 
-        // Worker Objekt erstellen
-        HttpWorker worker = null;
-        MutableLiveData<HttpState> stateData;
+        return result;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        //if (managed) { // Kann so nicht stehen bleiben. Ohne forceLoad() wird der enthaltene Code überhaupt nicht ausgeführt :/
+            forceLoad();
+        //}
+    }
+
+    // endregion
+
+    // region Interne Methoden zum Bearbeiten von Kalendereinträgen
+    //=======================================================
+    //===========METHODEN ZUR DATENVERARBEITUNG==============
+    //=======================================================
+
+    /**
+     * Führt die Synchronisation aus. Wird über den SyncCoordinator aufgerufen.
+     */
+    private ResultWrapper load(String url, String user, String pass) {
+
+        // Internetverbindung testen
+        if (!FeedDownloader.checkNetwork(getContext())) {
+
+            // Es ist keine Internetverbindung vorhanden
+            return new ResultWrapper(new IOException(getContext().getString(R.string.error_no_network)));
+
+        }
+
+        // Die Haupt-URL wird in den aktiven Kalender importiert, die weiteren ICS Dateien jeweils in ihren eigenen Kalender
+        ArrayList<FeedConfig> feeds = new ArrayList<>();
+        feeds.add(new FeedConfig(url, user, pass, cManager.getActiveCalendar().getId()));
+        feeds.addAll(pManager.getAdditionalFeeds());
+
+        // Der Abgleich ordnet alle Einträge der App in einem Kalender einer Datei zu. Teilen sich zwei Dateien einen Kalender, würden sie sich gegenseitig die Einträge löschen.
+        int duplicateCalendar = FeedConfig.findDuplicateCalendar(feeds);
+        if (duplicateCalendar != -1) {
+            return new ResultWrapper(new Exception(getContext().getString(R.string.error_feed_calendar_duplicate) + " " + duplicateCalendar));
+        }
+
+        if (feeds.size() == 1) {
+            return importFeed(feeds.get(0), cManager);
+        }
+
+        return importFeeds(feeds);
+    }
+
+    /**
+     * Importiert mehrere ICS Dateien parallel. Jede Datei erhält einen eigenen CalendarManager, damit sich die vorgemerkten Einträge nicht vermischen.
+     * Es laufen maximal MAX_PARALLEL_FEEDS Downloads gleichzeitig. Die Gesamtdauer entspricht damit etwa der Dauer der langsamsten Datei.
+     * @param feeds Die zu importierenden Dateien. Die erste Datei wird mit dem CalendarManager des Loaders importiert.
+     * @return Zusammengefasstes Ergebnis. Schlägt der Import einer Datei fehl, werden die Fehlermeldungen aller fehlgeschlagenen Dateien ausgegeben.
+     */
+    private ResultWrapper importFeeds(final ArrayList<FeedConfig> feeds) {
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(feeds.size(), MAX_PARALLEL_FEEDS));
+        ArrayList<Future<ResultWrapper>> results = new ArrayList<>();
 
         try {
-            // HTTP-Worker initalisieren
-            worker = new HttpWorker(url, GET.class, getContext(), authenticator, null, false, null);
 
-            // Internetverbindung testen
-            if (!worker.checkNetwork(getContext())) {
+            for (int i = 0; i < feeds.size(); i++) {
+
+                final FeedConfig feed = feeds.get(i);
+                final boolean primary = i == 0;
+
+                results.add(executor.submit(new Callable<ResultWrapper>() {
+                    @Override
+                    public ResultWrapper call() {
+                        CalendarManager manager = primary ? cManager : createCalendarManager(feed);
+
+                        if (manager == null) {
+                            return new ResultWrapper(new Exception(getContext().getString(R.string.error_feed_calendar_missing) + " " + feed.getCalendarId()));
+                        }
+
+                        return importFeed(feed, manager);
+                    }
+                }));
+            }
+
+            ArrayList<Integer> eventIds = new ArrayList<>();
+            StringBuilder errors = new StringBuilder();
+            boolean transientError = false;
+            int addedEntries = 0;
+            int deletedEntries = 0;
 
-                // Es ist keine Internetverbindung vorhanden
-                return new ResultWrapper(new IOException(getContext().getString(R.string.error_no_network)));
+            for (int i = 0; i < results.size(); i++) {
+
+                ResultWrapper result;
+
+                try {
+                    result = results.get(i).get();
+                } catch (ExecutionException e) {
+                    result = new ResultWrapper(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return new ResultWrapper(e);
+                }
+
+                if (result.getException() != null) {
+                    errors.append(feeds.get(i).getUrl()).append(": ").append(result.getException().getMessage()).append("\n");
+                    transientError |= FeedException.isTransient(result.getException());
+                    continue;
+                }
+
+                if (result.getIds() != null) {
+                    eventIds.addAll(result.getIds());
+                }
 
+                addedEntries += Math.max(result.getAddedEntrys(), 0);
+                deletedEntries += Math.max(result.getDeletedEntrys(), 0);
             }
 
-            // Anfrage ausführen
-            worker.execute();
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException | IOException | NoSuchMethodException e)
-        {
+            if (errors.length() > 0) {
+                // Ist mindestens ein Fehler vorübergehend, wird der Abruf vom BackgroundService wiederholt
+                return new ResultWrapper(transientError ? new IOException(errors.toString().trim()) : new Exception(errors.toString().trim()));
+            }
+
+            return new ResultWrapper(eventIds, getContext().getString(R.string.info_import_successfull), deletedEntries, addedEntries);
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Erstellt einen CalendarManager für den Zielkalender einer weiteren ICS Datei
+     * @return Der CalendarManager oder null, falls der Kalender nicht existiert
+     */
+    private CalendarManager createCalendarManager(FeedConfig feed) {
+
+        CalendarManager manager = new CalendarManager(getContext(), coordinator);
+        manager.setActiveCalendar(feed.getCalendarId());
+
+        if (manager.getActiveCalendar() == null) {
+            return null;
+        }
+
+        return manager;
+    }
+
+    /**
+     * Lädt eine ICS Datei und überträgt die Events in den Kalender des übergebenen CalendarManagers
+     * @param feed Die zu importierende Datei
+     * @param cManager CalendarManager dessen aktiver Kalender das Ziel des Imports ist
+     */
+    private ResultWrapper importFeed(FeedConfig feed, CalendarManager cManager) {
+
+        if (shouldStop()) {
+            // Bspw. bei mehreren Dateien, wenn das Zeitbudget schon durch die vorherigen aufgebraucht wurde
+            return new ResultWrapper(new SyncInterruptedException(getContext().getString(R.string.info_sync_interrupted)));
+        }
+
+        String url = feed.getUrl();
+        String user = feed.getUser();
+        String pass = feed.getPassword();
+
+        // Variablen für Feedback an Nutzer
+        int addedEntries = 0;
+        int deletedEntries = 0;
+
+        // Downloader erstellen und die Anfrage ausführen. Die Antwort wird nicht komplett geladen, sondern Event für Event aus dem Stream gelesen.
+        FeedDownloader downloader = new FeedDownloader(url, user, pass);
+        InputStream responseStream;
+
+        // Validatoren der letzten erfolgreich importierten Version mitsenden. Hat sich die Datei nicht geändert, antwortet der Server mit HTTP 304 ohne Inhalt.
+        SyncStateManager syncState = new SyncStateManager(getContext());
+        int calendarId = feed.getCalendarId();
+
+        // Es werden nur Events innerhalb des Zeitfensters eingelesen und abgeglichen. Einträge außerhalb bleiben unverändert.
+        SyncHorizon horizon = SyncHorizon.create(pManager.getSyncPastDays(), pManager.getSyncFutureMonths(), System.currentTimeMillis());
+
+        // Eine unveränderte Datei kann nur übersprungen werden, wenn beim letzten Import bereits alle Events des aktuellen Zeitfensters übernommen wurden.
+        // Hat sich das Zeitfenster seitdem verschoben (oder wurde es vergrößert), muss die Datei erneut eingelesen werden.
+        SyncHorizon importedHorizon = syncState.loadHorizon(url, calendarId);
+        boolean horizonCovered = importedHorizon != null && importedHorizon.covers(horizon);
+
+        // Mit Abgleich muss die Datei auch dann eingelesen werden, wenn der Nutzer importierte Events aus dem Kalender gelöscht hat. Nur so werden sie wieder angelegt.
+        boolean skipUnchanged = horizonCovered && (!pManager.isReplaceExistingActivated() || cManager.verifySyncState(url));
+
+        String[] validators = syncState.loadValidators(url, calendarId);
+        if (validators != null && skipUnchanged) {
+            downloader.setValidators(validators[0], validators[1]);
+        }
+
+        // Viele Server senden keine Validatoren. Deren Antwort unterscheidet sich aber meist nur im DTSTAMP. Daher wird zusätzlich der Inhalt verglichen.
+        Long previousBodyHash = syncState.loadBodyHash(url, calendarId);
+
+        // Digest Sitzung des letzten Abrufs weiterverwenden. Dadurch entfällt die Anfrage ohne Anmeldung und die 401 Challenge.
+        downloader.setDigestSession(syncState.loadDigestSession(url, user));
+
+        try {
+            responseStream = downloader.open();
+        } catch (IOException e) {
+            downloader.disconnect();
             return new ResultWrapper(e);
         }
 
-        // Serverantwort abrufen
-        assert worker != null;
-        serverResponse = worker.getResponse(true);
+        // Sitzung inkl. des verwendeten Nonce-Counts für den nächsten Abruf speichern
+        syncState.storeDigestSession(url, user, downloader.getDigestSession());
+
+        if (responseStream == null && downloader.isNotModified()) {
+            // Die Datei ist unverändert -> Es gibt nichts zu tun
+            downloader.disconnect();
+            recordChange(syncState, url, calendarId, false);
+            return new ResultWrapper(getContext().getString(R.string.info_feed_unchanged), 0, 0);
+        }
+
+        if (responseStream == null && downloader.isUnauthorized()) {
+            // Die Zugangsdaten wurden abgelehnt. Ein erneuter Versuch lohnt sich erst nach einer Änderung durch den Nutzer (HTTP 401 gilt nicht als vorübergehend).
+            downloader.disconnect();
+            return new ResultWrapper(new FeedException(getContext().getString(R.string.error_credentials_rejected), downloader.getResponseCode()));
+        }
 
-        if (serverResponse == null || serverResponse.equals("")) {
+        if (responseStream == null) {
             // Laut Status stimmt irgendwas nicht. -> Fehlermeldung werfen
-            return new ResultWrapper(new Exception(getContext().getString(R.string.error_download_failed) + Objects.requireNonNull(worker.getResponseCode().getValue()).toString()));
+            downloader.disconnect();
+            return new ResultWrapper(new FeedException(getContext().getString(R.string.error_download_failed) + downloader.getResponseCode(), downloader.getResponseCode()));
         }
 
-        // Verbindung trennen
-        worker.disconnect();
+        // Die alten Validatoren verwerfen. Bricht der Import ab, muss die Datei beim nächsten Mal wieder vollständig geladen werden.
+        syncState.storeValidators(url, calendarId, null, null, null, null);
 
-        // Die Serverantwort in einzelne Events aufteilen
-        ArrayList<String> events = parseServerResponse(serverResponse);
-        ArrayList<Integer> eventIds = new ArrayList<>();
+        // Hashwert über den Inhalt während des Downloads berechnen
+        NormalizedHashInputStream hashStream = new NormalizedHashInputStream(responseStream);
+        responseStream = hashStream;
 
-        // Marker der angibt, ob auf bereits getätigte Eintragungen geprüft werden muss
-        boolean equalityCheckNeeded;
+        IEventSource eventReader;
 
-        cManager.loadCalendarEntries();
-        deletedEntries = cManager.getCrowdCount();
+        // Optional wird die Datei zuerst gespeichert. Dann kann bereits vor dem Einlesen geprüft werden, ob sich der Inhalt geändert hat.
+        // Ohne Zwischenspeicher wird der Hashwert beim Einlesen berechnet und vor dem Schreiben verglichen (siehe unten). Das Einlesen selbst entfällt dann nicht.
+        boolean spooled = pManager.isSpoolFeedsActivated();
 
-        // Prüfen, ob die bestehenden Einträge überschrieben werden sollen. In diesem Fall können jetzt alle Einträge gelöscht und die neuen direkt eingefügt werden. Das ist einfacher, als bei allen zu prüfen, ob sich etwas geändert hat.
-        if (pManager.isReplaceExistingActivated()) {
+        if (spooled) {
+            // Die Antwort wird zuerst komplett in das Cache-Verzeichnis geschrieben und dann direkt aus der Datei gelesen. Die Datei bleibt bis zum nächsten Abruf zur Fehlersuche erhalten.
+            File spoolFile = new File(getContext().getCacheDir(), "feed_" + calendarId + "_" + Integer.toHexString(url.hashCode()) + ".ics");
+
+            try {
+                spool(responseStream, spoolFile, downloader);
+
+                if (spoolFile.length() == 0) {
+                    throw new IOException(getContext().getString(R.string.error_empty_feed));
+                }
+            } catch (IOException e) {
+                return new ResultWrapper(e);
+            } finally {
+                closeQuietly(responseStream);
+                downloader.disconnect();
+            }
 
-            // Alle bestehenden Einträge löschen
-            cManager.deleteEntries();
+            if (skipUnchanged && previousBodyHash != null && previousBodyHash == hashStream.getHash()) {
+                // Der Inhalt ist bis auf flüchtige Eigenschaften unverändert -> Einlesen, Abgleich und Schreiben entfallen
+                syncState.storeValidators(url, calendarId, downloader.getETag(), downloader.getLastModified(), previousBodyHash, importedHorizon);
+                recordChange(syncState, url, calendarId, false);
+                return new ResultWrapper(getContext().getString(R.string.info_feed_unchanged), 0, 0);
+            }
 
-            equalityCheckNeeded = false;
+            try {
+                eventReader = new IcsEventScanner(spoolFile);
+            } catch (IOException e) {
+                return new ResultWrapper(e);
+            }
         }
         else {
-            // Einträge bleiben bestehen, es werden nur neue Einträge hinzugefügt
-            // Den CalendarManager anweisen zu den bestehenden ID's die Einträge zu laden
-            cManager.loadCalendarEntries();
-            equalityCheckNeeded = true;
+            eventReader = new IcsEventReader(new InputStreamReader(responseStream, Charset.forName("UTF-8")));
         }
 
-        int counter = 0;
+        ArrayList<Integer> eventIds = new ArrayList<>();
+
+        // Prüfen, ob die bestehenden Einträge überschrieben werden sollen. In diesem Fall werden die Events aus der ICS Datei mit den bestehenden Einträgen abgeglichen.
+        // Es werden nur neue, geänderte und entfernte Events in den Kalender geschrieben. Ohne diese Option werden nur neue Einträge hinzugefügt.
 
-        // Es kann passieren, dass im ersten Eintrag der events-Liste der "Header" der ical Datei enthalten ist. Jetzt prüfen, ob dies der Fall ist und den Header ggf. entfernen
-        if (events.get(0).contains("BEGIN:VCALENDAR")) {
-            events.remove(0);
+        SyncDiff diff = null;
+
+        // Gibt an, ob die Einträge ohne Abgleich erst geschrieben werden, wenn feststeht, dass sich der Inhalt geändert hat
+        boolean deferWrites = false;
+
+        if (pManager.isReplaceExistingActivated()) {
+            // Die bestehenden Einträge kommen aus dem SyncStateManager, der Kalender wird nur beim ersten Abgleich durchsucht
+            diff = cManager.createSyncDiff(url);
         }
+        else {
+            // Ohne Zwischenspeicher steht erst nach dem Einlesen fest, ob die Datei unverändert ist. Bis dahin werden die Einträge zurückgehalten,
+            // damit bei unverändertem Inhalt weder der Kalender durchsucht noch etwas eingefügt wird.
+            deferWrites = !spooled && skipUnchanged && previousBodyHash != null;
 
-        if (BuildConfig.DEBUG) {
-            Log.d("LOG_SERVICE", "Adding: " + events.size());
+            if (!deferWrites) {
+                cManager.loadCalendarEntries(horizon);
+            }
+
+            // Die hinzugefügten Einträge werden nicht im SyncStateManager erfasst. Ein späterer Abgleich muss daher wieder vom Kalender ausgehen.
+            cManager.invalidateSyncState(url);
         }
 
-        addedEntries = events.size();
+        int counter;
 
+        // Gibt an, ob die ICS Datei bis END:VCALENDAR gelesen wurde
+        boolean complete;
 
-        // Die einzelnen Events durchgehen und jeweils einen Kalendereintrag erstellen
-        for (String event: events
-             ) {
-            CustomCalendarEntry entry;
+        // Gibt an, ob der Inhalt bis auf flüchtige Eigenschaften dem letzten Import entspricht
+        boolean unchangedContent = false;
 
-            try {
-                entry = CustomCalendarEntry.fromICS(event,cManager.getActiveCalendar().getId());
-            } catch (Exception e) {
-                return new ResultWrapper(e);
+        // Beim Schreiben des Abgleichs wird zwischen den Batches geprüft, ob der Import beendet werden soll
+        cManager.setCheckpoint(this);
+
+        try {
+
+            // Lesen, Umwandeln und Schreiben laufen überlappend. Während der Kalender beschrieben wird, werden bereits die nächsten Events geladen und umgewandelt.
+            ImportPipeline pipeline = new ImportPipeline(eventReader, calendarId, horizon);
+
+            EntryWriter writer = new EntryWriter(cManager, diff, downloader, eventReader, pipeline, deferWrites);
+
+            counter = pipeline.run(writer);
+
+            if (downloader.getBytesRead() == 0) {
+                // Eine leere Antwort ist meist ein Fehler des Servers. Im Ersetzen-Modus würden sonst alle Einträge gelöscht.
+                throw new IOException(getContext().getString(R.string.error_empty_feed));
             }
 
-            if (entry != null && entry.getEntryState() != CustomCalendarEntry.EntryState.DECLINED && entry.getEntryState() != CustomCalendarEntry.EntryState.CANCELED) {
-                // Wenn der Eintrag abgelehnt oder gecancelt wurde, muss er auch nicht mehr zum Kalender hinzugefügt werden
+            complete = eventReader.isComplete();
 
-                int response = cManager.addCalenderEntry(entry, equalityCheckNeeded, pManager.isReminderActivated(),pManager.isInteligentReminderActivated());
+            if ((diff != null || writer.isDeferred()) && skipUnchanged && previousBodyHash != null && hashStream.isComplete() && previousBodyHash == hashStream.getHash()) {
+                // Der Inhalt ist unverändert -> Abgleich und Schreiben entfallen. Beim Einlesen wurde noch nichts in den Kalender geschrieben.
+                unchangedContent = true;
+            }
+            else if (diff != null) {
+                // Events außerhalb des Zeitfensters sind noch in der ICS Datei enthalten und dürfen nicht gelöscht werden
+                diff.retain(pipeline.getSkippedKeys());
 
-                // Antwort auswerten
-                switch (response) {
-                    case -1:
-                        // Irgendwas ist schief gelaufen
-                        Exception e = new Exception(getContext().getString(R.string.error_failed_to_create_entry) + entry.getTitle() + " @ " + entry.getStartMillis() + " (DataLoader.loadIngBackground)");
-                        return new ResultWrapper(e);
+                // Wurde die Datei abgeschnitten, fehlen evtl. Events. Diese dürfen nicht als entfernt gelöscht werden.
+                if (!complete) {
+                    diff.keepMissing();
+                }
 
-                    case -2:
-                        // Eintrag ist schon vorhanden -> nichts tun
-                        break;
+                diff.compute();
 
-                    case -3:
-                        // Es existieren noch gar keine Einträge -> Es muss nicht weiter geprüft werden
-                        equalityCheckNeeded = false;
+                // Nur die Änderungen in den Kalender schreiben
+                if (!cManager.applyDiff(diff, url, pManager.isReminderActivated(), pManager.isInteligentReminderActivated())) {
+                    return new ResultWrapper(new Exception(getContext().getString(R.string.error_batch_insert_failed) + " (DataLoader.loadIngBackground)"));
+                }
 
-                        // Ersten Eintrag nochmal hinzufügen, da er bei der Antwort -3 nicht bearbeitet wurde
-                        eventIds.add(cManager.addCalenderEntry(entry, false, pManager.isReminderActivated(),pManager.isInteligentReminderActivated()));
-                        break;
+                deletedEntries = diff.getDeletes().size();
+                addedEntries = diff.getInserts().size() + diff.getUpdates().size();
+            }
+            else {
+                // Der Inhalt hat sich geändert -> Die zurückgehaltenen Einträge mit dem Kalender vergleichen und vormerken
+                if (writer.isDeferred()) {
+                    cManager.loadCalendarEntries(horizon);
+                    writer.flushBuffer();
+                }
 
-                    default:
-                        // Es wurde eine ID zurückgegeben -> Hinzufügen
-                        eventIds.add(response);
-                        break;
+                // Die restlichen vorgemerkten Einträge einfügen
+                if (!cManager.applyPendingEntries()) {
+                    return new ResultWrapper(new Exception(getContext().getString(R.string.error_batch_insert_failed) + " (DataLoader.loadIngBackground)"));
                 }
 
+                addedEntries = counter;
             }
 
-            counter ++;
+            eventIds = cManager.takeInsertedIds();
+
+        } catch (Exception e) {
+            return new ResultWrapper(e);
+        } finally {
+            // Nach einem Abbruch dürfen keine vorgemerkten Einträge für den nächsten Durchlauf übrig bleiben
+            cManager.discardPendingEntries();
+            cManager.setCheckpoint(null);
+
+            // Verbindung zuerst trennen. Das beendet einen blockierenden Lesezugriff der Lesestufe, die sonst die Sperre des Readers hält und close() warten lässt.
+            downloader.disconnect();
+            closeQuietly(eventReader);
+        }
+
+        if (unchangedContent) {
+            syncState.storeValidators(url, calendarId, downloader.getETag(), downloader.getLastModified(), previousBodyHash, importedHorizon);
+            recordChange(syncState, url, calendarId, false);
+            return new ResultWrapper(getContext().getString(R.string.info_feed_unchanged), 0, 0);
+        }
+
+        // Import war erfolgreich -> Validatoren für die nächste Abfrage speichern. Bei einer abgeschnittenen Datei muss beim nächsten Mal wieder vollständig geladen werden.
+        if (complete) {
+            syncState.storeValidators(url, calendarId, downloader.getETag(), downloader.getLastModified(), hashStream.getHash(), horizon);
+        }
+        else if (BuildConfig.DEBUG) {
+            Log.d("LOG_SERVICE", "Feed ended without END:VCALENDAR, deletes skipped");
+        }
 
-            publishProgress("Fortschritt " + counter + "/" + events.size(), counter, events.size());
+        // Beim ersten Import gibt es keinen Vergleichsstand. Wurde die Datei nur wegen des verschobenen Zeitfensters erneut eingelesen, kann sie trotzdem unverändert sein.
+        if (validators != null || previousBodyHash != null) {
+            recordChange(syncState, url, calendarId, previousBodyHash == null || !hashStream.isComplete() || previousBodyHash != hashStream.getHash());
+        }
 
+        if (BuildConfig.DEBUG) {
+            Log.d("LOG_SERVICE", "Processed: " + counter + " Added/Updated: " + addedEntries + " Deleted: " + deletedEntries);
         }
 
         // Liste mit den Event-IDs zurückgeben
         return new ResultWrapper(eventIds,getContext().getString(R.string.info_import_successfull),deletedEntries,addedEntries);
     }
 
-    @Override
-    protected void onStartLoading() {
-        //if (managed) { // Kann so nicht stehen bleiben. Ohne forceLoad() wird der enthaltene Code überhaupt nicht ausgeführt :/
-            forceLoad();
-        //}
-    }
+    /**
+     * Passt das Synchronisationsintervall einer ICS Datei an die beobachtete Änderung an. Wird auch ohne adaptive Synchronisation erfasst, damit beim Aktivieren bereits Werte vorliegen.
+     * @param changed Gibt an, ob sich die Datei seit dem letzten Abruf geändert hat
+     */
+    private void recordChange(SyncStateManager syncState, String url, int calendarId, boolean changed) {
 
-    // endregion
+        long configured = pManager.getSyncInterval();
+        if (configured <= 0) {
+            configured = PreferencesManager.DEFAULT_SYNC_INTERVAL;
+        }
 
-    // region Interne Methoden zum Bearbeiten von Kalendereinträgen
-    //=======================================================
-    //===========METHODEN ZUR DATENVERARBEITUNG==============
-    //=======================================================
+        Long current = syncState.loadAdaptiveInterval(url, calendarId);
+        long interval = AdaptiveInterval.next(current != null ? current : configured, changed, configured);
+
+        syncState.storeAdaptiveInterval(url, calendarId, interval);
+
+        if (BuildConfig.DEBUG) {
+            Log.d("LOG_SERVICE", "Feed " + (changed ? "changed" : "unchanged") + ", adaptive interval: " + (interval / 1000) + " s");
+        }
+    }
 
     /**
-     * Parst die Antwort des Servers in eine Stringliste mit den einzelnen Events
-     * @param serverResponse Komplette Antwort des Servers (ohne HTTP Header)
+     * Schreibstufe des Imports: Übergibt die umgewandelten Einträge an den SyncDiff bzw. merkt sie im CalendarManager zum gebündelten Einfügen vor.
+     * Ohne Abgleich können die Einträge zurückgehalten werden, bis feststeht, ob sich der Inhalt der Datei geändert hat (siehe flushBuffer).
      */
-    private ArrayList<String> parseServerResponse(String serverResponse) {
+    private class EntryWriter implements ImportPipeline.IEntryConsumer {
+
+        private final CalendarManager cManager;
+        private final SyncDiff diff;
+        private final FeedDownloader downloader;
+        private final IEventSource source;
+        private final ImportPipeline pipeline;
+
+        // Zurückgehaltene Einträge ohne Abgleich. Null, falls die Einträge direkt vorgemerkt werden.
+        private ArrayList<CustomCalendarEntry> buffer;
+
+        // Marker der angibt, ob auf bereits getätigte Eintragungen geprüft werden muss
+        private boolean equalityCheckNeeded = true;
+
+        EntryWriter(CalendarManager cManager, SyncDiff diff, FeedDownloader downloader, IEventSource source, ImportPipeline pipeline, boolean deferWrites) {
+            this.cManager = cManager;
+            this.diff = diff;
+            this.downloader = downloader;
+            this.source = source;
+            this.pipeline = pipeline;
+
+            if (diff == null && deferWrites) {
+                buffer = new ArrayList<>();
+            }
+        }
+
+        @Override
+        public void accept(CustomCalendarEntry entry) throws Exception {
+
+            if (diff != null || buffer != null) {
+                // Es wurde noch nichts geschrieben. Ein Abbruch wegen des Zeitbudgets würde den gesamten Download verwerfen,
+                // daher endet der Import dort erst beim Schreiben (siehe CalendarManager.applyDiff bzw. write). Nur ein Abbruch durch den Nutzer oder das System beendet das Einlesen.
+                if (isLoadInBackgroundCanceled()) {
+                    throw new SyncInterruptedException(getContext().getString(R.string.info_sync_interrupted));
+                }
+
+                if (isImportable(entry)) {
+                    if (diff != null) {
+                        // Der Abgleich erfolgt, sobald alle Events gelesen wurden
+                        diff.offer(entry);
+                    }
+                    else {
+                        buffer.add(entry);
+                    }
+                }
+            }
+            else {
+                write(entry);
+            }
+
+            publishDownloadProgress(downloader, source, pipeline.getProcessedCount());
+        }
+
+        /**
+         * @return True, falls die Einträge bis zum Aufruf von flushBuffer zurückgehalten werden
+         */
+        boolean isDeferred() {
+            return buffer != null;
+        }
+
+        /**
+         * Merkt die zurückgehaltenen Einträge zum Einfügen vor. Die bestehenden Einträge des Kalenders müssen vorher geladen worden sein.
+         */
+        void flushBuffer() throws Exception {
+
+            if (buffer == null) {
+                return;
+            }
+
+            ArrayList<CustomCalendarEntry> entries = buffer;
+            buffer = null;
+
+            for (CustomCalendarEntry entry : entries
+                    ) {
+                write(entry);
+            }
+        }
+
+        /**
+         * Merkt einen Eintrag ohne Abgleich zum Einfügen vor. Ist das Zeitbudget aufgebraucht, werden die bisher vorgemerkten Einträge geschrieben und der Import beendet.
+         */
+        private void write(CustomCalendarEntry entry) throws Exception {
+
+            if (shouldStop()) {
+                if (!cManager.applyPendingEntries()) {
+                    throw new Exception(getContext().getString(R.string.error_batch_insert_failed) + " (DataLoader.loadIngBackground)");
+                }
+
+                // Die bisherigen Einträge sind jetzt im Kalender und werden beim nächsten Lauf als vorhanden erkannt
+                if (BuildConfig.DEBUG) {
+                    Log.d("LOG_SERVICE", "Import stopped after " + pipeline.getProcessedCount() + " events");
+                }
+
+                throw new SyncInterruptedException(getContext().getString(R.string.info_sync_interrupted));
+            }
 
-        String[] rawEvents = serverResponse.split("BEGIN:VEVENT");
+            if (!isImportable(entry)) {
+                return;
+            }
+
+            // Der Eintrag wird nur vorgemerkt. Der CalendarManager fügt die gesammelten Einträge gebündelt in den Kalender ein.
+            int response = cManager.queueCalenderEntry(entry, equalityCheckNeeded, pManager.isReminderActivated(),pManager.isInteligentReminderActivated());
+
+            if (response == -3) {
+                // Es existieren noch gar keine Einträge -> Es muss nicht weiter geprüft werden
+                equalityCheckNeeded = false;
+
+                // Eintrag nochmal vormerken, da er bei der Antwort -3 nicht bearbeitet wurde
+                response = cManager.queueCalenderEntry(entry, false, pManager.isReminderActivated(),pManager.isInteligentReminderActivated());
+            }
 
-        return new ArrayList<>(Arrays.asList(rawEvents));
+            if (response == -1) {
+                // Irgendwas ist schief gelaufen
+                throw new Exception(getContext().getString(R.string.error_failed_to_create_entry) + entry.getTitle() + " @ " + entry.getStartMillis() + " (DataLoader.loadIngBackground)");
+            }
+        }
 
+        /**
+         * Wenn der Eintrag abgelehnt oder gecancelt wurde, muss er auch nicht mehr zum Kalender hinzugefügt werden
+         */
+        private boolean isImportable(CustomCalendarEntry entry) {
+            return entry.getEntryState() != CustomCalendarEntry.EntryState.DECLINED && entry.getEntryState() != CustomCalendarEntry.EntryState.CANCELED;
+        }
+    }
+
+    /**
+     * Gibt den Fortschritt des Imports aus. Ist die Größe der Serverantwort bekannt, wird der Fortschritt anhand der gelesenen Bytes berechnet.
+     * Wird aus einer gespeicherten Datei gelesen, ergibt sich der Fortschritt aus der Leseposition in der Datei.
+     * @param downloader Downloader aus dessen Stream gelesen wird
+     * @param source Quelle aus der die Events gelesen werden
+     * @param counter Anzahl der bisher verarbeiteten Events
+     */
+    private void publishDownloadProgress(FeedDownloader downloader, IEventSource source, int counter) {
+
+        long total = downloader.getContentLength();
+
+        if (source instanceof IcsEventScanner) {
+            IcsEventScanner scanner = (IcsEventScanner) source;
+            coordinator.publishProgress("Fortschritt " + counter + " Termine", (int) (scanner.getPosition() / 1024), (int) (scanner.getSize() / 1024));
+        }
+        else if (total > 0) {
+            // Angabe in kB, damit auch große Dateien in den Wertebereich der Progressbar passen
+            coordinator.publishProgress("Fortschritt " + counter + " Termine", (int) (downloader.getBytesRead() / 1024), (int) (total / 1024));
+        }
+        else {
+            coordinator.publishProgress("Fortschritt " + counter + " Termine", counter, counter);
+        }
     }
 
+    /**
+     * Schreibt die Serverantwort in eine Datei. Eine bereits vorhandene Datei wird überschrieben.
+     * @param source Stream der Serverantwort (bereits entpackt)
+     * @param target Zieldatei
+     * @param downloader Downloader für die Fortschrittsanzeige
+     */
+    private void spool(InputStream source, File target, FeedDownloader downloader) throws IOException {
+
+        OutputStream out = new FileOutputStream(target);
+
+        try {
+            byte[] buffer = new byte[SPOOL_BUFFER_SIZE];
+            int count;
+            long total = downloader.getContentLength();
+
+            while ((count = source.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+
+                if (shouldStop()) {
+                    throw new SyncInterruptedException(getContext().getString(R.string.info_sync_interrupted));
+                }
+
+                if (total > 0) {
+                    coordinator.publishProgress("Download " + (downloader.getBytesRead() / 1024) + " kB", (int) (downloader.getBytesRead() / 1024), (int) (total / 1024));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
 
+    /**
+     * Schließt einen Stream ohne auf Fehler zu reagieren. Wird nach dem Import verwendet, wenn das Ergebnis bereits feststeht.
+     */
+    private void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
     // endregion
 
@@ -295,6 +795,19 @@ public class DataLoader extends AsyncTaskLoader<ResultWrapper> implements IError
     // endregion
 
 
+    // region Checkpoint
+
+    /**
+     * Der Import wird beendet, wenn der Loader abgebrochen wurde (bspw. beim Beenden des Hintergrundservice) oder das Zeitbudget aufgebraucht ist
+     */
+    @Override
+    public boolean shouldStop() {
+        return isLoadInBackgroundCanceled() || (deadline > 0 && System.currentTimeMillis() >= deadline);
+    }
+
+    // endregion
+
+
     // region IErrorCallback-Methoden
 
     /**
@@ -0,0 +1,449 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import firesoft.de.kalenderadapter.data.DigestContainer;
+
+/**
+ * Lädt eine ICS Datei vom Server und stellt die Antwort als Stream bereit. Im Gegensatz zum HttpWorker wird die Antwort nicht als kompletter String im Speicher gehalten.
+ * Die Anmeldung erfolgt per Digest Authentifizierung.
+ */
+public class FeedDownloader {
+
+    //=======================================================
+    //=====================VARIABLEN=========================
+    //=======================================================
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private HttpURLConnection connection;
+    private int responseCode;
+    private long contentLength;
+
+    // Wird von der Lesestufe des Imports geschrieben und vom Thread des Loaders für die Fortschrittsanzeige gelesen
+    private volatile long bytesRead;
+
+    // Validatoren aus der letzten erfolgreichen Abfrage. Werden für einen bedingten GET Request gesendet.
+    private String ifNoneMatch;
+    private String ifModifiedSince;
+
+    // Digest Sitzung. Wird sie aus einem vorherigen Abruf übernommen, kann die Anfrage direkt mit Authorization-Header gesendet werden.
+    private DigestContainer digestSession;
+
+    // Zwischengespeicherter HA1 Wert (MD5 aus Nutzer, Realm und Kennwort) und der zugehörige Realm
+    private String ha1;
+    private String ha1Realm;
+
+    // Validatoren aus der aktuellen Antwort des Servers
+    private String eTag;
+    private String lastModified;
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT = 30000;
+    private static final int CNONCE_LENGTH = 16;
+    private static final int BUFFER_SIZE = 8192;
+
+    //=======================================================
+    //====================KONSTRUKTOR========================
+    //=======================================================
+
+    /**
+     * Erstellt eine neue Instanz
+     * @param url Adresse der ICS Datei
+     * @param user Nutzername für die Digest Authentifizierung
+     * @param password Kennwort für die Digest Authentifizierung
+     */
+    public FeedDownloader(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.responseCode = -1;
+        this.contentLength = -1;
+    }
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    /**
+     * Prüft, ob eine Internetverbindung vorhanden ist
+     * @param context Context des Aufrufs
+     * @return true, falls eine Verbindung besteht
+     */
+    public static boolean checkNetwork(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        if (cm == null) {
+            return false;
+        }
+
+        NetworkInfo info = cm.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+
+    /**
+     * Setzt die Validatoren der letzten Abfrage. Der Server kann dann mit HTTP 304 antworten, falls sich die Datei nicht geändert hat.
+     * @param eTag Wert des ETag-Headers der letzten Antwort oder null
+     * @param lastModified Wert des Last-Modified-Headers der letzten Antwort oder null
+     */
+    public void setValidators(String eTag, String lastModified) {
+        this.ifNoneMatch = eTag;
+        this.ifModifiedSince = lastModified;
+    }
+
+    /**
+     * Übernimmt die Digest Sitzung eines vorherigen Abrufs. Die Anfrage wird dann direkt mit der bekannten Nonce und einem erhöhten Nonce-Count gesendet, die 401 Challenge entfällt.
+     * @param session Gespeicherte Sitzung oder null
+     */
+    public void setDigestSession(DigestContainer session) {
+        this.digestSession = session;
+    }
+
+    /**
+     * Führt die Anfrage aus. Ist eine Digest Sitzung bekannt, wird diese direkt verwendet. Fordert der Server (erneut) eine Digest Authentifizierung an, wird die Anfrage einmal mit der neuen Challenge wiederholt.
+     * @return Stream mit dem Inhalt der Serverantwort oder null, falls der Server nicht mit HTTP 200 geantwortet hat. Der Statuscode kann dann über getResponseCode() abgerufen werden.
+     * Bei HTTP 304 (Datei unverändert) liefert isNotModified() true.
+     * @throws IOException Falls die Verbindung nicht aufgebaut werden konnte
+     */
+    public InputStream open() throws IOException {
+
+        String authorization = null;
+
+        // Bekannte Sitzung weiterverwenden. Für jede Anfrage mit derselben Nonce muss der Nonce-Count erhöht werden.
+        if (digestSession != null && user != null && password != null) {
+            digestSession.incrementNc();
+            authorization = buildDigestAuthorization(digestSession);
+        }
+
+        connection = createConnection(authorization);
+        responseCode = connection.getResponseCode();
+
+        // Der Server verlangt eine Authentifizierung -> Anfrage mit den Daten aus der Challenge wiederholen
+        // Bei einer bekannten Sitzung wird nur wiederholt, wenn die Nonce abgelaufen ist (stale=true). Ohne stale hat der Server die Zugangsdaten abgelehnt (HTTP 401 bleibt stehen).
+        if (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED && user != null && password != null) {
+
+            String challenge = connection.getHeaderField("WWW-Authenticate");
+            connection.disconnect();
+
+            DigestContainer digest = challenge != null && challenge.startsWith("Digest") ? new DigestContainer(challenge) : null;
+            boolean retry = digest != null && (digestSession == null || digest.isStale());
+
+            digestSession = null;
+
+            if (retry) {
+                connection = createConnection(buildDigestAuthorization(digest));
+                responseCode = connection.getResponseCode();
+
+                // Die Sitzung wird nur behalten, wenn die Zugangsdaten akzeptiert wurden
+                if (responseCode != HttpURLConnection.HTTP_UNAUTHORIZED) {
+                    digestSession = digest;
+                }
+            }
+        }
+
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+
+        eTag = connection.getHeaderField("ETag");
+        lastModified = connection.getHeaderField("Last-Modified");
+
+        contentLength = connection.getContentLength();
+        bytesRead = 0;
+
+        // Gezählt werden die übertragenen (ggf. komprimierten) Bytes, damit der Fortschritt zur angekündigten Länge passt
+        return decode(new CountingInputStream(connection.getInputStream()), connection.getContentEncoding());
+    }
+
+    /**
+     * Trennt die Verbindung zum Server
+     */
+    public void disconnect() {
+        if (connection != null) {
+            connection.disconnect();
+            connection = null;
+        }
+    }
+
+    //=======================================================
+    //==================PRIVATE METHODEN=====================
+    //=======================================================
+
+    /**
+     * Erzeugt eine neue Verbindung für einen GET Request
+     * @param authorization Inhalt des Authorization-Headers oder null, falls keiner gesetzt werden soll
+     */
+    private HttpURLConnection createConnection(String authorization) throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        con.setRequestMethod("GET");
+        con.setConnectTimeout(CONNECT_TIMEOUT);
+        con.setReadTimeout(READ_TIMEOUT);
+        con.setInstanceFollowRedirects(true);
+
+        // ICS Dateien lassen sich sehr gut komprimieren. Die Antwort wird in decode() beim Lesen entpackt.
+        con.setRequestProperty("Accept-Encoding", "gzip, deflate");
+
+        if (authorization != null) {
+            con.setRequestProperty("Authorization", authorization);
+        }
+
+        if (ifNoneMatch != null) {
+            con.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+
+        if (ifModifiedSince != null) {
+            con.setRequestProperty("If-Modified-Since", ifModifiedSince);
+        }
+
+        return con;
+    }
+
+    /**
+     * Entpackt die Antwort entsprechend des Content-Encoding-Headers. Die Daten werden dabei als Stream verarbeitet und nicht vollständig in den Speicher geladen.
+     * @param in Stream der Serverantwort
+     * @param encoding Inhalt des Content-Encoding-Headers oder null
+     */
+    private static InputStream decode(InputStream in, String encoding) throws IOException {
+
+        if (encoding == null) {
+            return in;
+        }
+
+        encoding = encoding.trim().toLowerCase(Locale.ROOT);
+
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+
+        if (encoding.equals("deflate")) {
+            // Laut RFC 7230 ist "deflate" ein zlib-Stream. Manche Server senden trotzdem rohe deflate-Daten, daher wird der zlib-Header geprüft.
+            BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+            buffered.mark(2);
+            int first = buffered.read();
+            int second = buffered.read();
+            buffered.reset();
+
+            boolean zlib = first >= 0 && second >= 0 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+
+            final Inflater inflater = new Inflater(!zlib);
+
+            return new InflaterInputStream(buffered, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        // Ein eigener Inflater wird von InflaterInputStream nicht freigegeben
+                        inflater.end();
+                    }
+                }
+            };
+        }
+
+        return in;
+    }
+
+    /**
+     * Berechnet den Authorization-Header nach RFC 2617
+     * @param digest Die vom Server gesendete Challenge
+     */
+    private String buildDigestAuthorization(DigestContainer digest) throws IOException {
+
+        URL target = new URL(url);
+        String uri = target.getFile();
+        if (uri.equals("")) {
+            uri = "/";
+        }
+
+        // HA1 hängt nur von Nutzer, Realm und Kennwort ab und wird daher nur einmal berechnet
+        if (ha1 == null || ha1Realm == null || !ha1Realm.equals(digest.getRealm())) {
+            ha1 = md5(user + ":" + digest.getRealm() + ":" + password);
+            ha1Realm = digest.getRealm();
+        }
+
+        String ha2 = md5("GET:" + uri);
+        String response;
+
+        StringBuilder builder = new StringBuilder("Digest ");
+        builder.append("username=\"").append(user).append("\", ");
+        builder.append("realm=\"").append(digest.getRealm()).append("\", ");
+        builder.append("nonce=\"").append(digest.getNonce()).append("\", ");
+        builder.append("uri=\"").append(uri).append("\", ");
+
+        if (digest.getQop() != null) {
+            // Es wird nur qop=auth unterstützt
+            String cnonce = digest.generateCnonce(CNONCE_LENGTH);
+            String nc = digest.getNcAsString();
+            response = md5(ha1 + ":" + digest.getNonce() + ":" + nc + ":" + cnonce + ":auth:" + ha2);
+
+            builder.append("qop=auth, ");
+            builder.append("nc=").append(nc).append(", ");
+            builder.append("cnonce=\"").append(cnonce).append("\", ");
+        }
+        else {
+            response = md5(ha1 + ":" + digest.getNonce() + ":" + ha2);
+        }
+
+        if (digest.getAlgorithm() != null) {
+            builder.append("algorithm=").append(digest.getAlgorithm()).append(", ");
+        }
+
+        if (digest.getOpaque() != null) {
+            builder.append("opaque=\"").append(digest.getOpaque()).append("\", ");
+        }
+
+        builder.append("response=\"").append(response).append("\"");
+
+        return builder.toString();
+    }
+
+    /**
+     * Berechnet den MD5 Hash eines Strings und gibt ihn als Hex-String aus
+     */
+    private static String md5(String input) throws IOException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            byte[] hash = md.digest(input.getBytes(Charset.forName("UTF-8")));
+
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    //=======================================================
+    //=======================GETTER==========================
+    //=======================================================
+
+    /**
+     * Gibt den HTTP Statuscode der letzten Anfrage aus. -1 falls noch keine Anfrage durchgeführt wurde.
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * Gibt die aktuelle Digest Sitzung aus. Diese sollte gespeichert und beim nächsten Abruf über setDigestSession() übergeben werden.
+     * @return Die Sitzung oder null, falls keine Digest Authentifizierung verwendet wird oder diese fehlgeschlagen ist
+     */
+    public DigestContainer getDigestSession() {
+        return digestSession;
+    }
+
+    /**
+     * Gibt an, ob der Server mit HTTP 304 geantwortet hat, die Datei sich seit der letzten Abfrage also nicht geändert hat
+     */
+    public boolean isNotModified() {
+        return responseCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    /**
+     * Gibt an, ob der Server die Zugangsdaten abgelehnt hat (HTTP 401 auch nach der Anmeldung bzw. ohne stale=true)
+     */
+    public boolean isUnauthorized() {
+        return responseCode == HttpURLConnection.HTTP_UNAUTHORIZED;
+    }
+
+    /**
+     * Gibt den ETag der Antwort aus. Null, falls der Server keinen gesendet hat.
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Gibt den Last-Modified-Header der Antwort aus. Null, falls der Server keinen gesendet hat.
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Gibt die vom Server angekündigte Länge der Antwort in Bytes aus. -1 falls unbekannt.
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Gibt die Anzahl der bisher aus dem Stream gelesenen Bytes aus
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    //=======================================================
+    //===================INTERNE KLASSEN=====================
+    //=======================================================
+
+    /**
+     * Zählt die gelesenen Bytes mit. Wird für die Fortschrittsanzeige benötigt.
+     */
+    private class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                bytesRead += count;
+            }
+            return count;
+        }
+    }
+}
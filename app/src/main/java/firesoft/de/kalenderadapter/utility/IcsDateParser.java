@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import java.text.ParseException;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wandelt Zeitangaben im ICS Basisformat (yyyyMMdd'T'HHmmss, optional mit "Z" für UTC, oder yyyyMMdd) in Millisekunden seit Epoch um.
+ * Die Berechnung erfolgt direkt aus den Ziffern, es werden keine SimpleDateFormat- oder Calendar-Objekte erzeugt. Die Klasse ist threadsicher.
+ */
+public class IcsDateParser {
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    /**
+     * Bereits aufgelöste Zeitzonen. TimeZone.getTimeZone ist vergleichsweise teuer und wird so für jede TZID nur einmal aufgerufen.
+     */
+    private static final ConcurrentHashMap<String, TimeZone> TIMEZONES = new ConcurrentHashMap<>();
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    /**
+     * Wandelt eine Zeitangabe in Millisekunden seit Epoch um
+     * @param value Zeitangabe, bspw. 20180417T190000, 20180417T170000Z oder 20180417
+     * @param tzid Zeitzone in der die Angabe gilt (bspw. Europe/Berlin). Wird bei UTC-Angaben ignoriert. Null = Zeitzone des Geräts
+     * @return Zeitpunkt in Millisekunden seit Epoch
+     * @throws ParseException Falls die Zeitangabe nicht dem erwarteten Format entspricht
+     */
+    public static long parse(String value, String tzid) throws ParseException {
+
+        if (value == null) {
+            throw new ParseException("Missing date value", 0);
+        }
+
+        int length = value.length();
+
+        int year = digits(value, 0, 4);
+        int month = digits(value, 4, 2);
+        int day = digits(value, 6, 2);
+
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        boolean utc = false;
+
+        if (length > 8) {
+            if (value.charAt(8) != 'T' || (length != 15 && length != 16)) {
+                throw new ParseException("Malformed date: " + value, 8);
+            }
+
+            hour = digits(value, 9, 2);
+            minute = digits(value, 11, 2);
+            second = digits(value, 13, 2);
+
+            if (length == 16) {
+                if (value.charAt(15) != 'Z') {
+                    throw new ParseException("Malformed date: " + value, 15);
+                }
+                utc = true;
+            }
+        }
+        else if (length != 8) {
+            throw new ParseException("Malformed date: " + value, length);
+        }
+
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59) {
+            throw new ParseException("Date out of range: " + value, 0);
+        }
+
+        long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + hour * MILLIS_PER_HOUR
+                + minute * MILLIS_PER_MINUTE
+                + second * MILLIS_PER_SECOND;
+
+        if (utc) {
+            return local;
+        }
+
+        return toUtc(local, getTimeZone(tzid));
+    }
+
+    /**
+     * Gibt die Zeitzone zu einer TZID aus. Das Ergebnis wird zwischengespeichert.
+     * @param tzid TZID aus der ICS Datei. Null = Zeitzone des Geräts
+     */
+    public static TimeZone getTimeZone(String tzid) {
+
+        if (tzid == null) {
+            return TimeZone.getDefault();
+        }
+
+        TimeZone zone = TIMEZONES.get(tzid);
+
+        if (zone == null) {
+            zone = TimeZone.getTimeZone(tzid);
+            TIMEZONES.putIfAbsent(tzid, zone);
+        }
+
+        return zone;
+    }
+
+    //=======================================================
+    //==================PRIVATE METHODEN=====================
+    //=======================================================
+
+    /**
+     * Rechnet eine lokale Zeit (Millisekunden seit Epoch, als wäre die Zeitzone UTC) in die tatsächliche UTC Zeit um.
+     * Wie beim lenienten Calendar werden Zeiten in der Lücke der Sommerzeitumstellung und doppelte Zeiten bei der Rückstellung als Normalzeit interpretiert.
+     */
+    private static long toUtc(long local, TimeZone zone) {
+
+        // Zuerst als Normalzeit interpretieren
+        long standard = local - zone.getRawOffset();
+        int offset = zone.getOffset(standard);
+
+        if (offset == zone.getRawOffset()) {
+            return standard;
+        }
+
+        // Zu diesem Zeitpunkt gilt ein anderer Offset (bspw. Sommerzeit). Das Ergebnis ist nur gültig, wenn dort derselbe Offset gilt, ansonsten liegt die Zeit in der Lücke der Umstellung.
+        long shifted = local - offset;
+
+        if (zone.getOffset(shifted) == offset) {
+            return shifted;
+        }
+
+        return standard;
+    }
+
+    /**
+     * Liest eine feste Anzahl an Ziffern als Zahl ein
+     */
+    private static int digits(String value, int start, int count) throws ParseException {
+
+        if (value.length() < start + count) {
+            throw new ParseException("Malformed date: " + value, value.length());
+        }
+
+        int result = 0;
+
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+
+            if (c < '0' || c > '9') {
+                throw new ParseException("Malformed date: " + value, i);
+            }
+
+            result = result * 10 + (c - '0');
+        }
+
+        return result;
+    }
+
+    /**
+     * Berechnet die Anzahl der Tage seit dem 01.01.1970 für ein Datum im gregorianischen Kalender
+     * Basiert auf http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import firesoft.de.kalenderadapter.interfaces.IEventSource;
+
+/**
+ * Liest die einzelnen VEVENT-Blöcke einer ICS Datei nacheinander aus einem Stream. Es wird immer nur das aktuelle Event im Speicher gehalten, die restliche Datei bleibt im Stream.
+ * Die Zeilen werden über einen IcsLineReader gelesen und sind damit bereits entfaltet und frei von CR-Zeichen.
+ */
+public class IcsEventReader implements IEventSource {
+
+    //=======================================================
+    //=====================VARIABLEN=========================
+    //=======================================================
+
+    private final IcsLineReader reader;
+
+    /**
+     * Puffer für das aktuelle Event. Wird für jedes Event wiederverwendet.
+     */
+    private final StringBuilder buffer;
+
+    // Gibt an, ob END:VCALENDAR gelesen wurde
+    private boolean complete;
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    private static final String BEGIN_EVENT = "BEGIN:VEVENT";
+    private static final String END_EVENT = "END:VEVENT";
+    private static final String END_CALENDAR = "END:VCALENDAR";
+
+    //=======================================================
+    //====================KONSTRUKTOR========================
+    //=======================================================
+
+    /**
+     * Erstellt eine neue Instanz
+     * @param source Reader aus dem die ICS Daten gelesen werden (bspw. der Stream der Serverantwort)
+     */
+    public IcsEventReader(Reader source) {
+        this.reader = new IcsLineReader(source);
+        this.buffer = new StringBuilder(1024);
+    }
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    /**
+     * Liest das nächste Event aus dem Stream. Alles was außerhalb eines VEVENT-Blocks steht (bspw. der Header der ICS Datei) wird übersprungen.
+     * @return Das Event inkl. BEGIN:VEVENT / END:VEVENT, die Zeilen sind durch "\n" getrennt. Null, wenn keine weiteren Events vorhanden sind.
+     * @throws IOException Wird geworfen, falls das Lesen aus dem Stream fehlschlägt
+     */
+    @Override
+    public String nextEvent() throws IOException {
+
+        String line;
+        boolean insideEvent = false;
+
+        buffer.setLength(0);
+
+        while ((line = reader.readLine()) != null) {
+
+            if (!insideEvent) {
+                // Bis zum Beginn des nächsten Events vorspulen
+                if (line.startsWith(BEGIN_EVENT)) {
+                    insideEvent = true;
+                    buffer.append(line).append('\n');
+                }
+                else if (line.startsWith(END_CALENDAR)) {
+                    complete = true;
+                }
+                continue;
+            }
+
+            buffer.append(line).append('\n');
+
+            if (line.startsWith(END_EVENT)) {
+                return buffer.toString();
+            }
+        }
+
+        // Stream ist zu Ende. Ein nicht abgeschlossenes Event ist unvollständig (die Datei wurde abgeschnitten) und wird verworfen.
+        return null;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
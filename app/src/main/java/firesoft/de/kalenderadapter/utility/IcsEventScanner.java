@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import firesoft.de.kalenderadapter.interfaces.IEventSource;
+
+/**
+ * Liest die VEVENT-Blöcke einer auf dem Gerät gespeicherten ICS Datei. Die Datei wird über einen MappedByteBuffer eingeblendet und Byte für Byte durchsucht.
+ * Zeilen werden wie im IcsLineReader entfaltet, Text wird aber erst für das fertige Event erzeugt. Die Datei selbst wird nie komplett in einen String umgewandelt.
+ */
+public class IcsEventScanner implements IEventSource {
+
+    //=======================================================
+    //=====================VARIABLEN=========================
+    //=======================================================
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+
+    /**
+     * Puffer für die Bytes des aktuellen Events. Wird für jedes Event wiederverwendet und bei Bedarf vergrößert.
+     */
+    private byte[] event;
+    private int eventLength;
+
+    // Gibt an, ob END:VCALENDAR gelesen wurde
+    private boolean complete;
+
+    // Leseposition nach dem zuletzt gelesenen Event. Wird von der Lesestufe des Imports geschrieben und vom Thread des Loaders für die Fortschrittsanzeige gelesen.
+    private volatile long position;
+
+    // Größe der Datei in Bytes. Bleibt auch nach close() abrufbar.
+    private final long size;
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] BEGIN_EVENT = "BEGIN:VEVENT".getBytes(UTF8);
+    private static final byte[] END_EVENT = "END:VEVENT".getBytes(UTF8);
+    private static final byte[] END_CALENDAR = "END:VCALENDAR".getBytes(UTF8);
+
+    //=======================================================
+    //====================KONSTRUKTOR========================
+    //=======================================================
+
+    /**
+     * Erstellt eine neue Instanz
+     * @param source Die ICS Datei (UTF-8)
+     * @throws IOException Wird geworfen, falls die Datei nicht geöffnet werden kann
+     */
+    public IcsEventScanner(File source) throws IOException {
+        file = new RandomAccessFile(source, "r");
+
+        try {
+            channel = file.getChannel();
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            size = map.limit();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+
+        event = new byte[1024];
+    }
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    /**
+     * Liest das nächste Event aus der Datei. Alles was außerhalb eines VEVENT-Blocks steht wird übersprungen.
+     * @return Das Event inkl. BEGIN:VEVENT / END:VEVENT, die Zeilen sind durch "\n" getrennt. Null, wenn keine weiteren Events vorhanden sind.
+     */
+    @Override
+    public String nextEvent() throws IOException {
+
+        if (map == null) {
+            throw new IOException("IcsEventScanner wurde bereits geschlossen");
+        }
+
+        boolean insideEvent = false;
+
+        eventLength = 0;
+
+        int lineStart;
+
+        while ((lineStart = readLine()) >= 0) {
+
+            if (!insideEvent) {
+                // Bis zum Beginn des nächsten Events vorspulen. Die gelesene Zeile wird wieder verworfen.
+                if (lineStartsWith(lineStart, BEGIN_EVENT)) {
+                    insideEvent = true;
+                }
+                else {
+                    complete |= lineStartsWith(lineStart, END_CALENDAR);
+                    eventLength = lineStart;
+                }
+                continue;
+            }
+
+            if (lineStartsWith(lineStart, END_EVENT)) {
+                position = map.position();
+                return new String(event, 0, eventLength, UTF8);
+            }
+        }
+
+        position = map.position();
+
+        // Datei ist zu Ende. Ein nicht abgeschlossenes Event ist unvollständig (die Datei wurde abgeschnitten) und wird verworfen.
+        return null;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Gibt die aktuelle Leseposition in Bytes aus
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Gibt die Größe der Datei in Bytes aus
+     */
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        map = null;
+        channel.close();
+        file.close();
+    }
+
+    //=======================================================
+    //==================PRIVATE METHODEN=====================
+    //=======================================================
+
+    /**
+     * Liest die nächste logische Zeile und hängt sie inkl. "\n" an den Eventpuffer an. Gefaltete Zeilen werden zusammengesetzt, CR-Zeichen entfernt.
+     * @return Position der Zeile im Eventpuffer oder -1, falls das Ende der Datei erreicht wurde
+     */
+    private int readLine() {
+
+        if (!map.hasRemaining()) {
+            return -1;
+        }
+
+        int lineStart = eventLength;
+
+        while (map.hasRemaining()) {
+
+            byte b = map.get();
+
+            if (b == '\r' || b == '\n') {
+
+                // CRLF als einen Zeilenumbruch behandeln
+                if (b == '\r' && map.hasRemaining() && map.get(map.position()) == '\n') {
+                    map.get();
+                }
+
+                // Beginnt die nächste Zeile mit einem Leerzeichen oder Tab, handelt es sich um eine Fortsetzung. Umbruch und Leerzeichen werden entfernt.
+                if (map.hasRemaining()) {
+                    byte next = map.get(map.position());
+                    if (next == ' ' || next == '\t') {
+                        map.get();
+                        continue;
+                    }
+                }
+
+                break;
+            }
+
+            append(b);
+        }
+
+        append((byte) '\n');
+
+        return lineStart;
+    }
+
+    /**
+     * Prüft, ob die Zeile an der angegebenen Position im Eventpuffer mit dem Präfix beginnt
+     */
+    private boolean lineStartsWith(int lineStart, byte[] prefix) {
+
+        if (eventLength - lineStart < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (event[lineStart + i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void append(byte b) {
+
+        if (eventLength == event.length) {
+            byte[] larger = new byte[event.length * 2];
+            System.arraycopy(event, 0, larger, 0, eventLength);
+            event = larger;
+        }
+
+        event[eventLength++] = b;
+    }
+}
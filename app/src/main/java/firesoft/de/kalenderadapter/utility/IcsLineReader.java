@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Liest die logischen Zeilen einer ICS Datei nach RFC 5545 (Abschnitt 3.1). Zeilenumbrüche dürfen als CRLF, LF oder CR vorliegen.
+ * Gefaltete Zeilen (die Folgezeile beginnt mit einem Leerzeichen oder Tab) werden wieder zu einer Zeile zusammengesetzt. Jedes Zeichen wird dabei nur einmal gelesen.
+ */
+public class IcsLineReader implements Closeable {
+
+    //=======================================================
+    //=====================VARIABLEN=========================
+    //=======================================================
+
+    private final Reader source;
+
+    private final char[] buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * Puffer für die aktuelle Zeile. Wird für jede Zeile wiederverwendet.
+     */
+    private final StringBuilder line;
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    private static final int BUFFER_SIZE = 8192;
+
+    //=======================================================
+    //====================KONSTRUKTOR========================
+    //=======================================================
+
+    /**
+     * Erstellt eine neue Instanz
+     * @param source Reader aus dem die ICS Daten gelesen werden
+     */
+    public IcsLineReader(Reader source) {
+        this.source = source;
+        this.buffer = new char[BUFFER_SIZE];
+        this.line = new StringBuilder(256);
+    }
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    /**
+     * Liest die nächste logische Zeile
+     * @return Die entfaltete Zeile ohne Zeilenumbruch oder null, falls das Ende des Streams erreicht wurde
+     * @throws IOException Wird geworfen, falls das Lesen aus dem Stream fehlschlägt
+     */
+    public String readLine() throws IOException {
+
+        int c = read();
+
+        if (c == -1) {
+            return null;
+        }
+
+        line.setLength(0);
+
+        while (c != -1) {
+
+            if (c == '\r' || c == '\n') {
+
+                // CRLF als einen Zeilenumbruch behandeln
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+
+                // Beginnt die nächste Zeile mit einem Leerzeichen oder Tab, handelt es sich um eine Fortsetzung. Umbruch und Leerzeichen werden entfernt.
+                int next = peek();
+                if (next == ' ' || next == '\t') {
+                    read();
+                    c = read();
+                    continue;
+                }
+
+                break;
+            }
+
+            line.append((char) c);
+            c = read();
+        }
+
+        return line.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    //=======================================================
+    //==================PRIVATE METHODEN=====================
+    //=======================================================
+
+    /**
+     * Liest das nächste Zeichen aus dem Puffer
+     * @return Das Zeichen oder -1 am Ende des Streams
+     */
+    private int read() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Gibt das nächste Zeichen aus, ohne es zu verbrauchen
+     * @return Das Zeichen oder -1 am Ende des Streams
+     */
+    private int peek() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Füllt den Puffer mit neuen Daten aus dem Stream
+     * @return false, falls das Ende des Streams erreicht wurde
+     */
+    private boolean fill() throws IOException {
+        int count;
+
+        do {
+            count = source.read(buffer, 0, buffer.length);
+        } while (count == 0);
+
+        if (count < 0) {
+            return false;
+        }
+
+        position = 0;
+        limit = count;
+        return true;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import firesoft.de.kalenderadapter.data.CustomCalendarEntry;
+import firesoft.de.kalenderadapter.data.SyncHorizon;
+import firesoft.de.kalenderadapter.interfaces.IEventSource;
+
+/**
+ * Verarbeitet eine ICS Datei in drei überlappenden Stufen: Lesen der Events aus dem Stream (Netzwerk), Umwandeln in CustomCalendarEntry (CPU) und Übergabe an den Consumer.
+ * Lesen und Umwandeln laufen in eigenen Threads, der Consumer wird im aufrufenden Thread ausgeführt. Die Stufen sind über Warteschlangen mit fester Größe verbunden. Ist eine Warteschlange voll, wartet die vorherige Stufe.
+ * Ob das Schreiben in den Kalender überlappt, hängt vom Consumer ab: Ohne Abgleich schreibt er die Einträge batchweise während des Imports, sofern er sie nicht bis zum Vergleich des Hashwerts zurückhält. Mit Abgleich sammelt er sie nur im SyncDiff,
+ * geschrieben wird erst nach SyncDiff.compute(), also nachdem die Pipeline beendet ist.
+ */
+public class ImportPipeline {
+
+    //=======================================================
+    //=====================VARIABLEN=========================
+    //=======================================================
+
+    private final IEventSource source;
+    private final int calendarId;
+
+    // Zeitfenster der zu importierenden Events. Null = alle Events.
+    private final SyncHorizon horizon;
+
+    // Sync-Schlüssel der Events außerhalb des Zeitfensters und der Events die nicht gelesen werden konnten. Wird nur von der Umwandlungsstufe beschrieben.
+    private final ArrayList<String> skippedKeys;
+
+    private final ArrayBlockingQueue<String> events;
+    private final ArrayBlockingQueue<CustomCalendarEntry> entries;
+
+    // Erster Fehler der Lese- oder Umwandlungsstufe
+    private final AtomicReference<Exception> failure;
+
+    // Anzahl der bisher umgewandelten Events (inkl. der Events die nicht gelesen werden konnten)
+    private final AtomicInteger processed;
+
+    // Anzahl der Events die nicht gelesen werden konnten
+    private final AtomicInteger unreadable;
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    private static final int QUEUE_CAPACITY = 64;
+
+    // Markieren das Ende der jeweiligen Warteschlange. Werden nur über ihre Identität erkannt.
+    private static final String END_OF_EVENTS = new String("END_OF_EVENTS");
+    private static final CustomCalendarEntry END_OF_ENTRIES = new CustomCalendarEntry();
+
+    //=======================================================
+    //====================KONSTRUKTOR========================
+    //=======================================================
+
+    /**
+     * Erstellt eine neue Instanz
+     * @param source Quelle aus der die Events gelesen werden
+     * @param calendarId ID des Kalenders in den die Einträge geschrieben werden
+     */
+    public ImportPipeline(IEventSource source, int calendarId) {
+        this(source, calendarId, null);
+    }
+
+    /**
+     * Erstellt eine neue Instanz, die nur Events innerhalb eines Zeitfensters umwandelt
+     * @param source Quelle aus der die Events gelesen werden
+     * @param calendarId ID des Kalenders in den die Einträge geschrieben werden
+     * @param horizon Zeitfenster. Events die außerhalb beginnen, werden nicht an den Consumer übergeben (siehe getSkippedKeys). Null = alle Events.
+     */
+    public ImportPipeline(IEventSource source, int calendarId, SyncHorizon horizon) {
+        this.source = source;
+        this.calendarId = calendarId;
+        this.horizon = horizon;
+        this.skippedKeys = new ArrayList<>();
+        this.events = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.entries = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.failure = new AtomicReference<>();
+        this.processed = new AtomicInteger();
+        this.unreadable = new AtomicInteger();
+    }
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    /**
+     * Führt den Import aus und übergibt die umgewandelten Einträge in der Reihenfolge der Datei an den Consumer. Kehrt zurück, sobald alle Events verarbeitet wurden.
+     * Wirft der Consumer einen Fehler, werden die anderen Stufen abgebrochen. Die Quelle muss danach vom Aufrufer geschlossen werden, damit ein wartender Lesezugriff endet.
+     * @param consumer Schreibstufe. Wird im aufrufenden Thread ausgeführt.
+     * @return Anzahl der verarbeiteten Events
+     * @throws Exception Fehler des Consumers oder der Lese- bzw. Umwandlungsstufe
+     */
+    public int run(IEntryConsumer consumer) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    readEvents();
+                }
+            });
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    parseEvents();
+                }
+            });
+
+            CustomCalendarEntry entry;
+
+            while ((entry = entries.take()) != END_OF_ENTRIES) {
+                consumer.accept(entry);
+            }
+
+            Exception e = failure.get();
+            if (e != null) {
+                throw e;
+            }
+
+            return processed.get();
+
+        } finally {
+            // Unterbricht die anderen Stufen, falls sie noch auf einen Platz in der Warteschlange warten
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Gibt die Anzahl der bisher umgewandelten Events aus. Kann während des Imports für die Fortschrittsanzeige verwendet werden.
+     */
+    public int getProcessedCount() {
+        return processed.get();
+    }
+
+    /**
+     * Gibt die Anzahl der Events aus, die nicht gelesen werden konnten und übersprungen wurden
+     */
+    public int getUnreadableCount() {
+        return unreadable.get();
+    }
+
+    /**
+     * Gibt die Sync-Schlüssel der Events außerhalb des Zeitfensters und der nicht lesbaren Events (sofern eine UID gefunden wurde) aus. Darf erst nach run() abgefragt werden.
+     * Die zugehörigen Einträge im Kalender dürfen beim Abgleich nicht als entfernt gelten.
+     */
+    public ArrayList<String> getSkippedKeys() {
+        return skippedKeys;
+    }
+
+    //=======================================================
+    //==================PRIVATE METHODEN=====================
+    //=======================================================
+
+    /**
+     * Lesestufe: Liest die Events aus der Quelle
+     */
+    private void readEvents() {
+        try {
+            String event;
+            while ((event = source.nextEvent()) != null) {
+                events.put(event);
+            }
+        } catch (InterruptedException e) {
+            // Der Import wurde abgebrochen
+            return;
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        }
+
+        try {
+            events.put(END_OF_EVENTS);
+        } catch (InterruptedException e) {
+            // Der Import wurde abgebrochen
+        }
+    }
+
+    /**
+     * Umwandlungsstufe: Erstellt aus den gelesenen Events die Kalendereinträge. Events die nicht gelesen werden können, werden übersprungen. Ein bestehender Eintrag mit derselben UID bleibt dabei erhalten.
+     */
+    private void parseEvents() {
+        try {
+            try {
+                String event;
+                while ((event = events.take()) != END_OF_EVENTS) {
+
+                    if (horizon != null && skipBeforeParsing(event)) {
+                        processed.incrementAndGet();
+                        continue;
+                    }
+
+                    CustomCalendarEntry entry;
+
+                    try {
+                        entry = CustomCalendarEntry.fromICS(event, calendarId);
+                    } catch (Exception e) {
+                        // Ein fehlerhaftes Event (bspw. ungültiges Datum) bricht nicht den gesamten Import ab
+                        processed.incrementAndGet();
+                        unreadable.incrementAndGet();
+
+                        String key = CustomCalendarEntry.peekSyncKey(event);
+                        if (key != null) {
+                            skippedKeys.add(key);
+                        }
+                        continue;
+                    }
+
+                    processed.incrementAndGet();
+
+                    if (entry != null && horizon != null && !horizon.contains(entry.getStartMillis())) {
+                        skippedKeys.add(entry.getSyncKey());
+                        continue;
+                    }
+
+                    if (entry != null) {
+                        entries.put(entry);
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            }
+
+            entries.put(END_OF_ENTRIES);
+
+        } catch (InterruptedException e) {
+            // Der Import wurde abgebrochen
+        }
+    }
+
+    /**
+     * Prüft anhand von DTSTART und UID, ob ein Event außerhalb des Zeitfensters liegt, ohne den Eintrag zu erzeugen
+     * @return true, falls das Event übersprungen wurde. Bei false muss das Event vollständig eingelesen werden (bspw. ohne UID, da der Sync-Schlüssel dann vom Inhalt abhängt).
+     */
+    private boolean skipBeforeParsing(String event) {
+
+        long start = CustomCalendarEntry.peekStartMillis(event);
+
+        if (start == Long.MIN_VALUE || horizon.contains(start)) {
+            return false;
+        }
+
+        String key = CustomCalendarEntry.peekSyncKey(event);
+
+        if (key == null) {
+            return false;
+        }
+
+        skippedKeys.add(key);
+        return true;
+    }
+
+    //=======================================================
+    //=====================INTERFACES========================
+    //=======================================================
+
+    /**
+     * Schreibstufe der Pipeline
+     */
+    public interface IEntryConsumer {
+
+        /**
+         * Verarbeitet einen umgewandelten Eintrag
+         * @throws Exception Bricht den Import ab
+         */
+        void accept(CustomCalendarEntry entry) throws Exception;
+    }
+}
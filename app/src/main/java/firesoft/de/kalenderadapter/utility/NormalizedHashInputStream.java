@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Berechnet beim Lesen einen Hashwert (FNV-1a, 64 Bit) über den Inhalt einer ICS Datei. Die Daten werden dabei nicht verändert.
+ * Vor dem Hashen wird der Inhalt normalisiert: Zeilenumbrüche und Faltungen werden ignoriert und Eigenschaften die sich bei jedem Abruf ändern (DTSTAMP) übersprungen.
+ * Zwei Abrufe mit gleichem Hashwert enthalten damit dieselben Termine.
+ */
+public class NormalizedHashInputStream extends FilterInputStream {
+
+    //=======================================================
+    //=====================VARIABLEN=========================
+    //=======================================================
+
+    private long hash;
+
+    // Gibt an, ob das Ende des Streams erreicht wurde. Erst dann ist der Hashwert vollständig.
+    private boolean complete;
+
+    // Anfang der aktuellen Zeile. Reicht aus, um zu entscheiden, ob die Zeile übersprungen wird.
+    private final byte[] prefix;
+    private int prefixLength;
+
+    // Gibt an, ob für die aktuelle Zeile bereits entschieden wurde, ob sie gehasht wird
+    private boolean decided;
+
+    // Gibt an, ob die aktuelle logische Zeile übersprungen wird (gilt auch für ihre Fortsetzungszeilen)
+    private boolean skipping;
+
+    //=======================================================
+    //=====================KONSTANTEN========================
+    //=======================================================
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Eigenschaften die bei jedem Abruf einen neuen Wert haben können und daher nicht in den Hashwert einfließen
+     */
+    private static final byte[][] VOLATILE_PROPERTIES = new byte[][] {
+            "DTSTAMP".getBytes(Charset.forName("US-ASCII"))
+    };
+
+    private static final int PREFIX_SIZE = 16;
+
+    //=======================================================
+    //====================KONSTRUKTOR========================
+    //=======================================================
+
+    /**
+     * Erstellt eine neue Instanz
+     * @param in Stream mit der (entpackten) ICS Datei
+     */
+    public NormalizedHashInputStream(InputStream in) {
+        super(in);
+        hash = FNV_OFFSET_BASIS;
+        prefix = new byte[PREFIX_SIZE];
+    }
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+
+        if (b == -1) {
+            endOfLine();
+            complete = true;
+        }
+        else {
+            update((byte) b);
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, len);
+
+        if (count == -1) {
+            endOfLine();
+            complete = true;
+        }
+
+        for (int i = 0; i < count; i++) {
+            update(b[off + i]);
+        }
+
+        return count;
+    }
+
+    /**
+     * Übersprungene Bytes müssen ebenfalls gehasht werden, daher werden sie gelesen
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 4096)];
+        long skipped = 0;
+
+        while (skipped < n) {
+            int count = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+            if (count == -1) {
+                break;
+            }
+            skipped += count;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Gibt den Hashwert aus. Ist erst gültig, wenn der Stream bis zum Ende gelesen wurde.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Gibt an, ob der Stream bis zum Ende gelesen wurde und der Hashwert damit gültig ist
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    //=======================================================
+    //==================PRIVATE METHODEN=====================
+    //=======================================================
+
+    private void update(byte b) {
+
+        if (b == '\r' || b == '\n') {
+            endOfLine();
+            return;
+        }
+
+        if (decided) {
+            if (!skipping) {
+                hashByte(b);
+            }
+            return;
+        }
+
+        prefix[prefixLength++] = b;
+
+        if (prefixLength == PREFIX_SIZE) {
+            decide();
+        }
+    }
+
+    /**
+     * Schließt die aktuelle Zeile ab. Leere Zeilen fließen nicht in den Hashwert ein.
+     */
+    private void endOfLine() {
+
+        if (!decided && prefixLength > 0) {
+            decide();
+        }
+
+        prefixLength = 0;
+        decided = false;
+    }
+
+    /**
+     * Entscheidet anhand des Zeilenanfangs, ob die Zeile gehasht wird, und hasht den bereits gelesenen Anfang
+     */
+    private void decide() {
+
+        decided = true;
+
+        if (prefix[0] == ' ' || prefix[0] == '\t') {
+            // Fortsetzung der vorherigen Zeile. Wird ohne das führende Leerzeichen angehängt, die Faltung spielt damit keine Rolle.
+            if (!skipping) {
+                for (int i = 1; i < prefixLength; i++) {
+                    hashByte(prefix[i]);
+                }
+            }
+            return;
+        }
+
+        skipping = isVolatile();
+
+        if (!skipping) {
+            // Neue logische Zeile
+            hashByte((byte) '\n');
+            for (int i = 0; i < prefixLength; i++) {
+                hashByte(prefix[i]);
+            }
+        }
+    }
+
+    /**
+     * Prüft, ob der Zeilenanfang eine der flüchtigen Eigenschaften ist (Name gefolgt von ':' oder ';')
+     */
+    private boolean isVolatile() {
+
+        for (byte[] name : VOLATILE_PROPERTIES
+                ) {
+
+            if (prefixLength <= name.length) {
+                continue;
+            }
+
+            boolean match = prefix[name.length] == ':' || prefix[name.length] == ';';
+
+            for (int i = 0; match && i < name.length; i++) {
+                // Eigenschaftsnamen sind nicht case-sensitiv
+                match = (prefix[i] & 0xDF) == name[i];
+            }
+
+            if (match) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void hashByte(byte b) {
+        hash ^= (b & 0xff);
+        hash *= FNV_PRIME;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import firesoft.de.kalenderadapter.data.CustomCalendarEntry;
+import firesoft.de.kalenderadapter.data.SyncState;
+
+/**
+ * Berechnet den Unterschied zwischen den Einträgen die die App im Kalender angelegt hat und den Events aus der ICS Datei.
+ * Events werden über ihren Sync-Schlüssel (UID bzw. UID und RECURRENCE-ID) wiedererkannt, Änderungen über den Hashwert des Inhalts. Einträge die noch ohne UID angelegt wurden, werden über Titel, Start- und Endzeit zugeordnet.
+ * Ergebnis sind die Listen der neu einzufügenden, zu aktualisierenden und zu löschenden Einträge. Unveränderte Einträge werden nicht angefasst.
+ */
+public class SyncDiff {
+
+    //=======================================================
+    //=====================VARIABLEN=========================
+    //=======================================================
+
+    // Bestehende Einträge mit Sync-Schlüssel
+    private final HashMap<String, SyncState> existingByKey;
+
+    // Bestehende Einträge ohne Sync-Schlüssel (angelegt von älteren Versionen der App)
+    private final HashMap<CustomCalendarEntry, CustomCalendarEntry> existingWithoutKey;
+
+    // Events aus der ICS Datei. Bei mehrfach vorhandenen Schlüsseln wird nur die neueste Version behalten.
+    private final LinkedHashMap<String, CustomCalendarEntry> incomingByKey;
+
+    private final ArrayList<CustomCalendarEntry> inserts;
+
+    // Schlüssel: ID des bestehenden Events, Wert: neuer Inhalt
+    private final LinkedHashMap<Integer, CustomCalendarEntry> updates;
+
+    private final ArrayList<Integer> deletes;
+
+    // Zuordnungen der unveränderten Einträge und Sync-Schlüssel der gelöschten Einträge. Werden für die Aktualisierung des SyncStateManager benötigt.
+    // Die Zuordnungen enthalten Event-ID und Hashwert, damit auch nach einem Abgleich über den Kalender vollständige Zuordnungen gespeichert werden können.
+    private final ArrayList<SyncState> unchanged;
+    private final ArrayList<String> deletedKeys;
+
+    // Gibt an, ob Einträge die in der ICS Datei fehlen erhalten bleiben (siehe keepMissing)
+    private boolean keepMissing;
+
+    //=======================================================
+    //====================KONSTRUKTOR========================
+    //=======================================================
+
+    private SyncDiff() {
+        existingByKey = new HashMap<>();
+        existingWithoutKey = new HashMap<>();
+        incomingByKey = new LinkedHashMap<>();
+        inserts = new ArrayList<>();
+        updates = new LinkedHashMap<>();
+        deletes = new ArrayList<>();
+        unchanged = new ArrayList<>();
+        deletedKeys = new ArrayList<>();
+    }
+
+    /**
+     * Erstellt eine neue Instanz auf Basis der aus dem Kalender gelesenen Einträge
+     * @param existing Die Einträge, die die App bereits im Kalender angelegt hat. Die EntryID muss die ID des Events sein.
+     */
+    public SyncDiff(Collection<CustomCalendarEntry> existing) {
+        this();
+
+        if (existing == null) {
+            return;
+        }
+
+        for (CustomCalendarEntry entry : existing
+                ) {
+
+            if (entry.getUid() != null) {
+                addExisting(new SyncState(entry.getSyncKey(), entry.getEntryID(), entry.getContentHash(), 0));
+            }
+            else {
+                CustomCalendarEntry duplicate = existingWithoutKey.put(entry, entry);
+
+                // Doppelte Einträge im Kalender werden in jedem Fall entfernt
+                if (duplicate != null) {
+                    deletes.add(duplicate.getEntryID());
+                }
+            }
+        }
+    }
+
+    /**
+     * Erstellt eine neue Instanz auf Basis der im SyncStateManager gespeicherten Zuordnungen. Der Kalender muss dafür nicht abgefragt werden.
+     * @param states Gespeicherte Zuordnungen der ICS Datei
+     */
+    public static SyncDiff fromSyncStates(Collection<SyncState> states) {
+        SyncDiff diff = new SyncDiff();
+
+        for (SyncState state : states
+                ) {
+            diff.addExisting(state);
+        }
+
+        return diff;
+    }
+
+    //=======================================================
+    //==================PUBLIC METHODEN======================
+    //=======================================================
+
+    /**
+     * Übergibt ein Event aus der ICS Datei. Kommt ein Schlüssel mehrfach vor, gewinnt die Version mit der höheren SEQUENCE bzw. dem späteren LAST-MODIFIED.
+     */
+    public void offer(CustomCalendarEntry incoming) {
+
+        String key = incoming.getSyncKey();
+
+        CustomCalendarEntry previous = incomingByKey.get(key);
+
+        if (previous == null || incoming.isNewerThan(previous)) {
+            incomingByKey.put(key, incoming);
+        }
+    }
+
+    /**
+     * Übergibt die Sync-Schlüssel von Events, die in der ICS Datei enthalten sind, aber nicht abgeglichen werden (bspw. außerhalb des Zeitfensters). Die zugehörigen Einträge bleiben unverändert erhalten.
+     * Muss vor compute() aufgerufen werden.
+     */
+    public void retain(Collection<String> keys) {
+
+        for (String key : keys
+                ) {
+            if (incomingByKey.containsKey(key)) {
+                continue;
+            }
+
+            SyncState existing = existingByKey.remove(key);
+
+            if (existing != null) {
+                unchanged.add(existing);
+            }
+        }
+    }
+
+    /**
+     * Verhindert, dass Einträge gelöscht werden, weil sie in der ICS Datei fehlen. Wird verwendet, wenn die Datei nicht vollständig gelesen wurde (kein END:VCALENDAR).
+     * Neue und geänderte Events werden trotzdem geschrieben. Muss vor compute() aufgerufen werden.
+     */
+    public void keepMissing() {
+        keepMissing = true;
+    }
+
+    /**
+     * Berechnet die Änderungen. Darf erst aufgerufen werden, nachdem alle Events übergeben wurden.
+     */
+    public void compute() {
+
+        for (CustomCalendarEntry incoming : incomingByKey.values()
+                ) {
+
+            SyncState existing = existingByKey.remove(incoming.getSyncKey());
+
+            if (existing != null) {
+                if (existing.getContentHash() == incoming.getContentHash()) {
+                    unchanged.add(existing);
+                }
+                else {
+                    updates.put(existing.getEventId(), incoming);
+                }
+                continue;
+            }
+
+            // Evtl. wurde der Eintrag noch ohne UID angelegt. Dann wird er aktualisiert, damit der Sync-Schlüssel gespeichert wird.
+            CustomCalendarEntry legacy = existingWithoutKey.remove(incoming);
+
+            if (legacy != null) {
+                updates.put(legacy.getEntryID(), incoming);
+            }
+            else {
+                inserts.add(incoming);
+            }
+        }
+
+        // Alles was jetzt noch übrig ist, ist in der ICS Datei nicht mehr vorhanden
+        for (SyncState state : existingByKey.values()
+                ) {
+            if (keepMissing) {
+                unchanged.add(state);
+                continue;
+            }
+
+            deletes.add(state.getEventId());
+            deletedKeys.add(state.getSyncKey());
+        }
+
+        if (!keepMissing) {
+            for (CustomCalendarEntry entry : existingWithoutKey.values()
+                    ) {
+                deletes.add(entry.getEntryID());
+            }
+        }
+
+        existingByKey.clear();
+        existingWithoutKey.clear();
+    }
+
+    //=======================================================
+    //==================PRIVATE METHODEN=====================
+    //=======================================================
+
+    private void addExisting(SyncState state) {
+        SyncState duplicate = existingByKey.put(state.getSyncKey(), state);
+
+        // Doppelte Einträge im Kalender werden in jedem Fall entfernt
+        if (duplicate != null) {
+            deletes.add(duplicate.getEventId());
+        }
+    }
+
+    //=======================================================
+    //=======================GETTER==========================
+    //=======================================================
+
+    public ArrayList<CustomCalendarEntry> getInserts() {
+        return inserts;
+    }
+
+    /**
+     * @return Schlüssel: ID des bestehenden Events, Wert: neuer Inhalt
+     */
+    public LinkedHashMap<Integer, CustomCalendarEntry> getUpdates() {
+        return updates;
+    }
+
+    public ArrayList<Integer> getDeletes() {
+        return deletes;
+    }
+
+    /**
+     * @return Die Zuordnungen der bestehenden Einträge mit Sync-Schlüssel. Nur vor compute() vollständig, da der Abgleich die Einträge danach verteilt hat.
+     */
+    public ArrayList<SyncState> getExistingStates() {
+        return new ArrayList<>(existingByKey.values());
+    }
+
+    /**
+     * @return Die Zuordnungen der unveränderten Einträge (Event-ID und Hashwert wie im Kalender bzw. im SyncStateManager)
+     */
+    public ArrayList<SyncState> getUnchangedStates() {
+        return unchanged;
+    }
+
+    public ArrayList<String> getUnchangedKeys() {
+        ArrayList<String> keys = new ArrayList<>(unchanged.size());
+
+        for (SyncState state : unchanged
+                ) {
+            keys.add(state.getSyncKey());
+        }
+
+        return keys;
+    }
+
+    public ArrayList<String> getDeletedKeys() {
+        return deletedKeys;
+    }
+
+    public int getUnchangedCount() {
+        return unchanged.size();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.data;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+
+import firesoft.de.kalenderadapter.utility.IcsDateParser;
+
+import static org.junit.Assert.*;
+
+public class CustomCalendarEntryTest {
+
+    private static final String EVENT = "BEGIN:VEVENT\n" +
+            "SUMMARY:Übungsdienst\n" +
+            "STATUS:CONFIRMED\n" +
+            "CATEGORIES:Zug 1\\, Zug 2\n" +
+            "LOCATION:Gerätehaus\n" +
+            "DTSTART;TZID=Europe/Berlin:20180417T190000\n" +
+            "DTEND;TZID=Europe/Berlin:20180417T210000\n" +
+            "END:VEVENT\n";
+
+    @Test
+    public void fromICSShouldReadAllProperties() throws ParseException {
+        CustomCalendarEntry entry = CustomCalendarEntry.fromICS(EVENT, 7);
+
+        assertNotNull(entry);
+        assertEquals("Übungsdienst", entry.getTitle());
+        assertEquals("Gerätehaus", entry.getLocation());
+        assertEquals("Zug 1- Zug 2", entry.getCategory());
+        assertEquals("Europe/Berlin", entry.getTimezone());
+        assertEquals(CustomCalendarEntry.EntryState.CONFIRMED, entry.getEntryState());
+        assertEquals(7, entry.getEntryID());
+        assertEquals(2 * 60 * 60 * 1000, entry.getEndMillis() - entry.getStartMillis());
+    }
+
+    @Test
+    public void fromICSShouldSetEndOfDayForAllDayEventsWithoutEnd() throws ParseException {
+        CustomCalendarEntry entry = CustomCalendarEntry.fromICS("SUMMARY:Ganztags\nSTATUS:TENTATIVE\nDTSTART;VALUE=DATE:20180517\n", 1);
+
+        assertNotNull(entry);
+        assertEquals(CustomCalendarEntry.EntryState.OPEN, entry.getEntryState());
+        assertEquals((23 * 60 * 60 + 59 * 60 + 59) * 1000, entry.getEndMillis() - entry.getStartMillis());
+    }
+
+    @Test
+    public void fromICSShouldReturnNullForCalendarHeader() throws ParseException {
+        assertNull(CustomCalendarEntry.fromICS("BEGIN:VCALENDAR\nVERSION:2.0\n", 1));
+    }
+
+    @Test
+    public void fromICSShouldReturnNullWithoutStartTime() throws ParseException {
+        assertNull(CustomCalendarEntry.fromICS("SUMMARY:Ohne Zeit\nSTATUS:CONFIRMED\n", 1));
+    }
+
+    @Test
+    public void fromICSShouldIgnoreCarriageReturns() throws ParseException {
+        CustomCalendarEntry lf = CustomCalendarEntry.fromICS(EVENT, 7);
+        CustomCalendarEntry crlf = CustomCalendarEntry.fromICS(EVENT.replace("\n", "\r\n"), 7);
+
+        assertNotNull(crlf);
+        assertEquals("Übungsdienst", crlf.getTitle());
+        assertTrue(lf.equals(crlf));
+    }
+
+    @Test
+    public void fromICSShouldReadUtcTimes() throws ParseException {
+        CustomCalendarEntry utc = CustomCalendarEntry.fromICS("SUMMARY:UTC\nSTATUS:CONFIRMED\nDTSTART:20180417T170000Z\nDTEND:20180417T190000Z\n", 1);
+        CustomCalendarEntry berlin = CustomCalendarEntry.fromICS(EVENT, 1);
+
+        assertNotNull(utc);
+        assertEquals(berlin.getStartMillis(), utc.getStartMillis());
+        assertEquals(berlin.getEndMillis(), utc.getEndMillis());
+    }
+
+    @Test
+    public void fromICSShouldReadSyncProperties() throws ParseException {
+        CustomCalendarEntry entry = CustomCalendarEntry.fromICS(EVENT.replace("END:VEVENT", "UID:4711@example.org\nSEQUENCE:3\nLAST-MODIFIED:20180401T120000Z\nRECURRENCE-ID;TZID=Europe/Berlin:20180417T190000\nEND:VEVENT"), 1);
+
+        assertNotNull(entry);
+        assertEquals("4711@example.org", entry.getUid());
+        assertEquals(3, entry.getSequence());
+        assertEquals(IcsDateParser.parse("20180401T120000Z", null), entry.getLastModified());
+        assertEquals("4711@example.org/20180417T190000", entry.getSyncKey());
+    }
+
+    @Test
+    public void fromICSShouldIgnoreMalformedSequence() throws ParseException {
+        CustomCalendarEntry entry = CustomCalendarEntry.fromICS(EVENT.replace("END:VEVENT", "UID:4711\nSEQUENCE:x\nEND:VEVENT"), 1);
+
+        assertNotNull(entry);
+        assertEquals(0, entry.getSequence());
+        assertEquals("4711", entry.getSyncKey());
+    }
+
+    @Test
+    public void equalEntriesShouldHaveEqualHashCodes() throws ParseException {
+        CustomCalendarEntry first = CustomCalendarEntry.fromICS(EVENT, 1);
+        CustomCalendarEntry second = CustomCalendarEntry.fromICS(EVENT.replace("Gerätehaus", "Wache"), 2);
+
+        assertTrue(first.equals((Object) second));
+        assertEquals(first.hashCode(), second.hashCode());
+        assertFalse(first.equals((Object) CustomCalendarEntry.fromICS(EVENT.replace("Übungsdienst", "Einsatz"), 1)));
+    }
+
+    @Test
+    public void peekShouldMatchFullParse() throws ParseException {
+        String event = EVENT.replace("END:VEVENT", "UID:4711\nRECURRENCE-ID;TZID=Europe/Berlin:20180417T190000\nEND:VEVENT");
+        CustomCalendarEntry entry = CustomCalendarEntry.fromICS(event, 1);
+
+        assertEquals(entry.getStartMillis(), CustomCalendarEntry.peekStartMillis(event));
+        assertEquals(entry.getSyncKey(), CustomCalendarEntry.peekSyncKey(event));
+
+        // Ohne UID hängt der Schlüssel vom Inhalt ab und kann nicht vorab gelesen werden
+        assertNull(CustomCalendarEntry.peekSyncKey(EVENT));
+        assertEquals(Long.MIN_VALUE, CustomCalendarEntry.peekStartMillis("BEGIN:VEVENT\nSUMMARY:Ohne Beginn\nEND:VEVENT\n"));
+    }
+
+}
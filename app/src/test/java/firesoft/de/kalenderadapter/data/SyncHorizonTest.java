@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.data;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+public class SyncHorizonTest {
+
+    private long time(int day, int hour) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2019, Calendar.MAY, day, hour, 30);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void createShouldOnlyMoveOncePerDay() {
+        SyncHorizon morning = SyncHorizon.create(7, 3, time(10, 8));
+        SyncHorizon evening = SyncHorizon.create(7, 3, time(10, 20));
+
+        assertEquals(morning.getFrom(), evening.getFrom());
+        assertEquals(morning.getTo(), evening.getTo());
+        assertTrue(morning.covers(evening));
+    }
+
+    @Test
+    public void coversShouldDetectMovedWindow() {
+        SyncHorizon imported = SyncHorizon.create(7, 3, time(10, 8));
+        SyncHorizon nextDay = SyncHorizon.create(7, 3, time(11, 8));
+
+        // Am nächsten Tag rücken neue Events in das Zeitfenster
+        assertFalse(imported.covers(nextDay));
+        assertTrue(nextDay.covers(SyncHorizon.create(7, 2, time(11, 8))));
+    }
+
+    @Test
+    public void coversShouldTreatNullAsUnlimited() {
+        SyncHorizon unlimited = new SyncHorizon(Long.MIN_VALUE, Long.MAX_VALUE);
+
+        assertTrue(unlimited.covers(null));
+        assertTrue(unlimited.covers(SyncHorizon.create(7, 3, time(10, 8))));
+        assertFalse(SyncHorizon.create(7, 3, time(10, 8)).covers(null));
+    }
+
+}
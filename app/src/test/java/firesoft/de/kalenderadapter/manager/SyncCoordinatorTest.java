@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.manager;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import firesoft.de.kalenderadapter.data.ResultWrapper;
+import firesoft.de.kalenderadapter.data.SyncInterruptedException;
+import firesoft.de.kalenderadapter.interfaces.ICheckpoint;
+import firesoft.de.kalenderadapter.interfaces.IErrorCallback;
+
+import static org.junit.Assert.*;
+
+public class SyncCoordinatorTest {
+
+    /**
+     * Merkt sich die letzte Fortschrittsmeldung
+     */
+    private static class ProgressRecorder implements IErrorCallback {
+
+        final AtomicReference<String> last = new AtomicReference<>();
+
+        @Override
+        public void publishError(String message) {
+            last.set(message);
+        }
+
+        @Override
+        public void publishProgress(String message, int current, int max) {
+            last.set(message);
+        }
+
+        @Override
+        public void appendProgress(String message) {
+            last.set(message);
+        }
+
+        @Override
+        public void switchCalendarUIElements(boolean enable) {
+        }
+    }
+
+    @Test
+    public void run_joinsInFlightSync() throws Exception {
+
+        final SyncCoordinator coordinator = new SyncCoordinator();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+
+        final ProgressRecorder leaderProgress = new ProgressRecorder();
+        final ProgressRecorder joinerProgress = new ProgressRecorder();
+
+        final ResultWrapper expected = new ResultWrapper("ok", 0, 1);
+
+        final Callable<ResultWrapper> sync = new Callable<ResultWrapper>() {
+            @Override
+            public ResultWrapper call() throws Exception {
+                executions.incrementAndGet();
+                started.countDown();
+                release.await();
+                coordinator.publishProgress("50%", 1, 2);
+                return expected;
+            }
+        };
+
+        final AtomicReference<ResultWrapper> leaderResult = new AtomicReference<>();
+        Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                leaderResult.set(coordinator.run("feed", sync, leaderProgress));
+            }
+        });
+        leader.start();
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(coordinator.isRunning());
+
+        final AtomicReference<ResultWrapper> joinerResult = new AtomicReference<>();
+        Thread joiner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                joinerResult.set(coordinator.run("feed", sync, joinerProgress));
+            }
+        });
+        joiner.start();
+
+        // Dem zweiten Aufrufer Zeit geben, sich anzuschließen
+        Thread.sleep(100);
+        release.countDown();
+
+        leader.join(5000);
+        joiner.join(5000);
+
+        assertEquals(1, executions.get());
+        assertSame(expected, leaderResult.get());
+        assertSame(expected, joinerResult.get());
+        assertEquals("50%", leaderProgress.last.get());
+        assertEquals("50%", joinerProgress.last.get());
+        assertFalse(coordinator.isRunning());
+    }
+
+    @Test
+    public void run_rerunsSyncStoppedByOtherCaller() throws Exception {
+
+        final SyncCoordinator coordinator = new SyncCoordinator();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+
+        final ResultWrapper expected = new ResultWrapper("ok", 0, 1);
+
+        // Der erste Lauf wird am Checkpoint seines Aufrufers beendet (bspw. abgelaufenes Zeitbudget im Hintergrund)
+        final Callable<ResultWrapper> sync = new Callable<ResultWrapper>() {
+            @Override
+            public ResultWrapper call() throws Exception {
+                if (executions.incrementAndGet() == 1) {
+                    started.countDown();
+                    release.await();
+                    return new ResultWrapper(new SyncInterruptedException("unterbrochen"));
+                }
+                return expected;
+            }
+        };
+
+        final AtomicReference<ResultWrapper> leaderResult = new AtomicReference<>();
+        Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                leaderResult.set(coordinator.run("feed", sync, new ProgressRecorder()));
+            }
+        });
+        leader.start();
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final AtomicReference<ResultWrapper> joinerResult = new AtomicReference<>();
+        Thread joiner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                joinerResult.set(coordinator.run("feed", sync, new ProgressRecorder(), new ICheckpoint() {
+                    @Override
+                    public boolean shouldStop() {
+                        return false;
+                    }
+                }));
+            }
+        });
+        joiner.start();
+
+        Thread.sleep(100);
+        release.countDown();
+
+        leader.join(5000);
+        joiner.join(5000);
+
+        assertEquals(2, executions.get());
+        assertTrue(leaderResult.get().getException() instanceof SyncInterruptedException);
+        assertSame(expected, joinerResult.get());
+    }
+
+    @Test
+    public void run_stopsWaitingWhenCallerIsCanceled() throws Exception {
+
+        final SyncCoordinator coordinator = new SyncCoordinator();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        final AtomicBoolean canceled = new AtomicBoolean();
+
+        final Callable<ResultWrapper> sync = new Callable<ResultWrapper>() {
+            @Override
+            public ResultWrapper call() throws Exception {
+                executions.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new ResultWrapper("ok", 0, 0);
+            }
+        };
+
+        Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                coordinator.run("feed", sync, new ProgressRecorder());
+            }
+        });
+        leader.start();
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch joinerDone = new CountDownLatch(1);
+        final AtomicReference<ResultWrapper> joinerResult = new AtomicReference<>(new ResultWrapper("nicht beendet", 0, 0));
+        Thread joiner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                joinerResult.set(coordinator.run("feed", sync, new ProgressRecorder(), new ICheckpoint() {
+                    @Override
+                    public boolean shouldStop() {
+                        return canceled.get();
+                    }
+                }));
+                joinerDone.countDown();
+            }
+        });
+        joiner.start();
+
+        // Der wartende Aufrufer wird abgebrochen, während die Synchronisation noch läuft
+        canceled.set(true);
+        assertTrue(joinerDone.await(5, TimeUnit.SECONDS));
+        assertNull(joinerResult.get());
+        assertTrue(coordinator.isRunning());
+
+        release.countDown();
+        leader.join(5000);
+
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void run_startsNewSyncAfterCompletion() {
+
+        SyncCoordinator coordinator = new SyncCoordinator();
+        final AtomicInteger executions = new AtomicInteger();
+
+        Callable<ResultWrapper> sync = new Callable<ResultWrapper>() {
+            @Override
+            public ResultWrapper call() {
+                executions.incrementAndGet();
+                return new ResultWrapper("ok", 0, 0);
+            }
+        };
+
+        coordinator.run("feed", sync, new ProgressRecorder());
+        coordinator.run("feed", sync, new ProgressRecorder());
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void run_returnsFailureAsResult() {
+
+        SyncCoordinator coordinator = new SyncCoordinator();
+
+        ResultWrapper result = coordinator.run("feed", new Callable<ResultWrapper>() {
+            @Override
+            public ResultWrapper call() throws Exception {
+                throw new IllegalStateException("kaputt");
+            }
+        }, new ProgressRecorder());
+
+        assertNotNull(result.getException());
+        assertEquals("kaputt", result.getException().getMessage());
+        assertFalse(coordinator.isRunning());
+    }
+}
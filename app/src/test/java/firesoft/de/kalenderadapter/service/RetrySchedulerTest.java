@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.service;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+import firesoft.de.kalenderadapter.data.FeedException;
+import firesoft.de.kalenderadapter.data.SyncInterruptedException;
+
+import static org.junit.Assert.*;
+
+public class RetrySchedulerTest {
+
+    @Test
+    public void computeDelayShouldGrowExponentiallyUpToCap() {
+        Random random = new Random(42);
+
+        for (int attempt = 0; attempt < 40; attempt++) {
+            long ceiling = attempt < 30 ? Math.min(RetryScheduler.MAX_DELAY, RetryScheduler.BASE_DELAY << attempt) : RetryScheduler.MAX_DELAY;
+            long delay = RetryScheduler.computeDelay(attempt, random);
+
+            assertTrue(delay >= ceiling / 2);
+            assertTrue(delay <= ceiling);
+        }
+    }
+
+    @Test
+    public void feedExceptionShouldTellTransientErrorsApart() {
+        assertTrue(FeedException.isTransient(new SocketTimeoutException()));
+        assertTrue(FeedException.isTransient(new IOException("Keine Verbindung")));
+        assertTrue(FeedException.isTransient(new FeedException("Serverfehler", 503)));
+        assertTrue(FeedException.isTransient(new FeedException("Zu viele Anfragen", 429)));
+
+        assertFalse(FeedException.isTransient(new FeedException("Nicht angemeldet", 401)));
+        assertFalse(FeedException.isTransient(new FeedException("Nicht gefunden", 404)));
+        assertFalse(FeedException.isTransient(new Exception("Eintrag fehlerhaft")));
+
+        // Ein unterbrochener Import wird fortgesetzt, aber nicht als fehlgeschlagener Versuch gezählt
+        assertFalse(FeedException.isTransient(new SyncInterruptedException("Zeitbudget aufgebraucht")));
+    }
+
+}
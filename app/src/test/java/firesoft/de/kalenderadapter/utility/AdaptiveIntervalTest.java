@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveIntervalTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long DAY = 24 * HOUR;
+
+    @Test
+    public void next_changedShortens() {
+        assertEquals(12 * HOUR, AdaptiveInterval.next(DAY, true, DAY));
+        assertEquals(6 * HOUR, AdaptiveInterval.next(12 * HOUR, true, DAY));
+
+        // Untere Grenze: ein Viertel des eingestellten Intervalls
+        assertEquals(6 * HOUR, AdaptiveInterval.next(6 * HOUR, true, DAY));
+    }
+
+    @Test
+    public void next_unchangedLengthens() {
+        assertEquals(36 * HOUR, AdaptiveInterval.next(DAY, false, DAY));
+
+        // Obere Grenze: das Vierfache des eingestellten Intervalls
+        assertEquals(4 * DAY, AdaptiveInterval.next(3 * DAY, false, DAY));
+    }
+
+    @Test
+    public void next_respectsMinimum() {
+        // Bei kurzen Intervallen greift die absolute Untergrenze
+        assertEquals(AdaptiveInterval.MIN_INTERVAL, AdaptiveInterval.next(HOUR / 2, true, HOUR / 2));
+
+        // Ohne bisherigen Wert wird vom eingestellten Intervall ausgegangen
+        assertEquals(12 * HOUR, AdaptiveInterval.next(0, true, DAY));
+    }
+}
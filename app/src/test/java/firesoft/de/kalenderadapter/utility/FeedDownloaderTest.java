@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import firesoft.de.kalenderadapter.data.DigestContainer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Prüft den Download gegen einen lokalen HTTP Server
+ */
+public class FeedDownloaderTest {
+
+    private static final String FEED = "BEGIN:VCALENDAR\r\nBEGIN:VEVENT\r\nSUMMARY:Übung\r\nEND:VEVENT\r\nEND:VCALENDAR\r\n";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private HttpServer server;
+
+    // Zuletzt vom Client gesendeter Accept-Encoding-Header
+    private String acceptEncoding;
+
+    // Vom Client an /digest.ics gesendete Authorization-Header (null = ohne Anmeldung)
+    private final ArrayList<String> authorizations = new ArrayList<>();
+
+    // Aktuell gültige Nonce des Digest Servers
+    private String serverNonce = "nonce1";
+
+    // Lehnt jede Anmeldung ohne stale=true ab (bspw. nach einer Änderung des Kennworts)
+    private boolean rejectCredentials;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/plain.ics", new FeedHandler(null, 0));
+        server.createContext("/gzip.ics", new FeedHandler("gzip", 0));
+        server.createContext("/deflate.ics", new FeedHandler("deflate", 0));
+        server.createContext("/rawdeflate.ics", new FeedHandler("deflate", 1));
+        server.createContext("/digest.ics", new DigestHandler());
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private String download(String path) throws IOException {
+        return download(new FeedDownloader(url(path), null, null));
+    }
+
+    private String download(FeedDownloader downloader) throws IOException {
+        try {
+            InputStream in = downloader.open();
+            assertNotNull(in);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            in.close();
+
+            return new String(out.toByteArray(), UTF8);
+        } finally {
+            downloader.disconnect();
+        }
+    }
+
+    @Test
+    public void openShouldAdvertiseCompression() throws IOException {
+        download("/plain.ics");
+        assertEquals("gzip, deflate", acceptEncoding);
+    }
+
+    @Test
+    public void openShouldReturnUncompressedFeed() throws IOException {
+        assertEquals(FEED, download("/plain.ics"));
+    }
+
+    @Test
+    public void openShouldDecompressGzip() throws IOException {
+        assertEquals(FEED, download("/gzip.ics"));
+    }
+
+    @Test
+    public void openShouldDecompressDeflate() throws IOException {
+        assertEquals(FEED, download("/deflate.ics"));
+    }
+
+    @Test
+    public void openShouldDecompressRawDeflate() throws IOException {
+        assertEquals(FEED, download("/rawdeflate.ics"));
+    }
+
+    @Test
+    public void openShouldReuseDigestSession() throws IOException {
+        FeedDownloader first = new FeedDownloader(url("/digest.ics"), "user", "geheim");
+        assertEquals(FEED, download(first));
+        assertEquals(2, authorizations.size());
+        assertNull(authorizations.get(0));
+
+        DigestContainer session = first.getDigestSession();
+        assertNotNull(session);
+        assertEquals(1, session.getNc());
+
+        // Zweiter Abruf sendet die Anmeldung direkt mit erhöhtem Nonce-Count
+        authorizations.clear();
+        FeedDownloader second = new FeedDownloader(url("/digest.ics"), "user", "geheim");
+        second.setDigestSession(session);
+        assertEquals(FEED, download(second));
+
+        assertEquals(1, authorizations.size());
+        assertTrue(authorizations.get(0).contains("nc=00000002"));
+    }
+
+    @Test
+    public void openShouldRenewStaleDigestSession() throws IOException {
+        serverNonce = "nonce2";
+
+        FeedDownloader downloader = new FeedDownloader(url("/digest.ics"), "user", "geheim");
+        downloader.setDigestSession(new DigestContainer("KalenderAdapter", "nonce1", "auth", "abc", "MD5", 5));
+        assertEquals(FEED, download(downloader));
+
+        assertEquals(2, authorizations.size());
+        assertEquals("nonce2", downloader.getDigestSession().getNonce());
+        assertEquals(1, downloader.getDigestSession().getNc());
+    }
+
+    @Test
+    public void openShouldNotRetryRejectedDigestSession() throws IOException {
+        rejectCredentials = true;
+
+        FeedDownloader downloader = new FeedDownloader(url("/digest.ics"), "user", "falsch");
+        downloader.setDigestSession(new DigestContainer("KalenderAdapter", "nonce1", "auth", "abc", "MD5", 5));
+
+        try {
+            assertNull(downloader.open());
+        } finally {
+            downloader.disconnect();
+        }
+
+        assertEquals(1, authorizations.size());
+        assertTrue(downloader.isUnauthorized());
+        assertNull(downloader.getDigestSession());
+    }
+
+    @Test
+    public void digestContainerShouldReadUnquotedStaleFlag() {
+        DigestContainer digest = new DigestContainer("Digest realm=\"KalenderAdapter\", nonce=\"abc\", qop=\"auth\", stale=true, algorithm=MD5");
+
+        assertTrue(digest.isStale());
+        assertEquals("abc", digest.getNonce());
+        assertEquals("MD5", digest.getAlgorithm());
+    }
+
+    /**
+     * Verlangt eine Digest Anmeldung. Geprüft wird nur die Nonce, eine veraltete Nonce wird mit stale=true abgelehnt.
+     */
+    private class DigestHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            authorizations.add(authorization);
+
+            if (authorization == null || rejectCredentials || !authorization.contains("nonce=\"" + serverNonce + "\"")) {
+                String challenge = "Digest realm=\"KalenderAdapter\", nonce=\"" + serverNonce + "\", qop=\"auth\", opaque=\"abc\", algorithm=MD5";
+
+                if (authorization != null && !rejectCredentials) {
+                    challenge += ", stale=true";
+                }
+
+                exchange.getResponseHeaders().set("WWW-Authenticate", challenge);
+                exchange.sendResponseHeaders(401, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = FEED.getBytes(UTF8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Liefert den Feed mit dem angegebenen Content-Encoding aus
+     */
+    private class FeedHandler implements HttpHandler {
+
+        private final String encoding;
+
+        // 1 = deflate ohne zlib-Header
+        private final int variant;
+
+        FeedHandler(String encoding, int variant) {
+            this.encoding = encoding;
+            this.variant = variant;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            OutputStream out;
+
+            if ("gzip".equals(encoding)) {
+                out = new GZIPOutputStream(body);
+            }
+            else if ("deflate".equals(encoding)) {
+                out = new DeflaterOutputStream(body, new Deflater(Deflater.DEFAULT_COMPRESSION, variant == 1));
+            }
+            else {
+                out = body;
+            }
+
+            out.write(FEED.getBytes(UTF8));
+            out.close();
+
+            if (encoding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            }
+
+            exchange.sendResponseHeaders(200, body.size());
+            exchange.getResponseBody().write(body.toByteArray());
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class IcsDateParserTest {
+
+    /**
+     * Referenzwert mit dem bisher im CustomCalendarEntry verwendeten SimpleDateFormat berechnen
+     */
+    private long reference(String value, String tzid) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss", Locale.GERMANY);
+        format.setTimeZone(TimeZone.getTimeZone(tzid));
+        return format.parse(value).getTime();
+    }
+
+    @Test
+    public void parseShouldMatchSimpleDateFormatInSummerTime() throws ParseException {
+        assertEquals(reference("20180417T190000", "Europe/Berlin"), IcsDateParser.parse("20180417T190000", "Europe/Berlin"));
+    }
+
+    @Test
+    public void parseShouldMatchSimpleDateFormatInWinterTime() throws ParseException {
+        assertEquals(reference("20181224T183000", "Europe/Berlin"), IcsDateParser.parse("20181224T183000", "Europe/Berlin"));
+    }
+
+    @Test
+    public void parseShouldMatchSimpleDateFormatAroundDaylightSavingChanges() throws ParseException {
+        String[] values = {"20180325T015959", "20180325T023000", "20180325T030000", "20181028T015959", "20181028T023000", "20181028T030000"};
+
+        for (String value : values) {
+            assertEquals(value, reference(value, "Europe/Berlin"), IcsDateParser.parse(value, "Europe/Berlin"));
+        }
+    }
+
+    @Test
+    public void parseShouldMatchSimpleDateFormatInOtherTimezones() throws ParseException {
+        assertEquals(reference("20190310T120000", "America/New_York"), IcsDateParser.parse("20190310T120000", "America/New_York"));
+        assertEquals(reference("20200229T235959", "Asia/Tokyo"), IcsDateParser.parse("20200229T235959", "Asia/Tokyo"));
+        assertEquals(reference("19991231T000000", "Europe/London"), IcsDateParser.parse("19991231T000000", "Europe/London"));
+    }
+
+    @Test
+    public void parseShouldTreatZSuffixAsUtc() throws ParseException {
+        assertEquals(reference("20180417T170000", "UTC"), IcsDateParser.parse("20180417T170000Z", "Europe/Berlin"));
+    }
+
+    @Test
+    public void parseShouldAcceptDateWithoutTime() throws ParseException {
+        assertEquals(reference("20180517T000000", "Europe/Berlin"), IcsDateParser.parse("20180517", "Europe/Berlin"));
+    }
+
+    @Test
+    public void getTimeZoneShouldReturnCachedInstance() {
+        assertSame(IcsDateParser.getTimeZone("Europe/Berlin"), IcsDateParser.getTimeZone("Europe/Berlin"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseShouldFailWhenMalformed() throws ParseException {
+        IcsDateParser.parse("2018-04-17T19:00", "Europe/Berlin");
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseShouldFailWhenOutOfRange() throws ParseException {
+        IcsDateParser.parse("20181317T190000", "Europe/Berlin");
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class IcsEventReaderTest {
+
+    private static final String FEED = "BEGIN:VCALENDAR\n" +
+            "VERSION:2.0\n" +
+            "BEGIN:VEVENT\n" +
+            "SUMMARY:Übung\n" +
+            "END:VEVENT\n" +
+            "BEGIN:VEVENT\n" +
+            "SUMMARY:Einsatz\n" +
+            "END:VEVENT\n" +
+            "END:VCALENDAR\n";
+
+    @Test
+    public void nextEventShouldSkipHeaderAndReturnEventsInOrder() throws IOException {
+        IcsEventReader reader = new IcsEventReader(new StringReader(FEED));
+
+        assertEquals("BEGIN:VEVENT\nSUMMARY:Übung\nEND:VEVENT\n", reader.nextEvent());
+        assertEquals("BEGIN:VEVENT\nSUMMARY:Einsatz\nEND:VEVENT\n", reader.nextEvent());
+        assertNull(reader.nextEvent());
+    }
+
+    @Test
+    public void nextEventShouldReturnNullForFeedWithoutEvents() throws IOException {
+        IcsEventReader reader = new IcsEventReader(new StringReader("BEGIN:VCALENDAR\nEND:VCALENDAR\n"));
+        assertNull(reader.nextEvent());
+    }
+
+    @Test
+    public void nextEventShouldDropTruncatedLastEvent() throws IOException {
+        IcsEventReader reader = new IcsEventReader(new StringReader("BEGIN:VEVENT\nSUMMARY:Ganz\nEND:VEVENT\nBEGIN:VEVENT\nSUMMARY:Abgeschnitten\n"));
+        assertEquals("BEGIN:VEVENT\nSUMMARY:Ganz\nEND:VEVENT\n", reader.nextEvent());
+        assertNull(reader.nextEvent());
+        assertFalse(reader.isComplete());
+    }
+
+    @Test
+    public void isCompleteShouldBeTrueAfterEndOfCalendar() throws IOException {
+        IcsEventReader reader = new IcsEventReader(new StringReader("BEGIN:VCALENDAR\nBEGIN:VEVENT\nEND:VEVENT\nEND:VCALENDAR\n"));
+        assertNotNull(reader.nextEvent());
+        assertNull(reader.nextEvent());
+        assertTrue(reader.isComplete());
+    }
+
+    @Test
+    public void nextEventShouldStripCarriageReturns() throws IOException {
+        IcsEventReader reader = new IcsEventReader(new StringReader("BEGIN:VEVENT\r\nSUMMARY:Übung\r\nEND:VEVENT\r\n"));
+        assertEquals("BEGIN:VEVENT\nSUMMARY:Übung\nEND:VEVENT\n", reader.nextEvent());
+    }
+
+    @Test
+    public void nextEventShouldUnfoldContinuationLines() throws IOException {
+        IcsEventReader reader = new IcsEventReader(new StringReader("BEGIN:VEVENT\r\nDESCRIPTION:Eine sehr lange Besc\r\n hreibung mit\r\n\t Tab\r\nEND:VEVENT\r\n"));
+        assertEquals("BEGIN:VEVENT\nDESCRIPTION:Eine sehr lange Beschreibung mit Tab\nEND:VEVENT\n", reader.nextEvent());
+    }
+
+}
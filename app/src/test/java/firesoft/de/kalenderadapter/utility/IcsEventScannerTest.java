@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class IcsEventScannerTest {
+
+    private static final String FEED = "BEGIN:VCALENDAR\n" +
+            "VERSION:2.0\n" +
+            "BEGIN:VEVENT\n" +
+            "SUMMARY:Übung\n" +
+            "END:VEVENT\n" +
+            "BEGIN:VEVENT\n" +
+            "SUMMARY:Einsatz\n" +
+            "END:VEVENT\n" +
+            "END:VCALENDAR\n";
+
+    /**
+     * Schreibt den Inhalt in eine temporäre Datei und öffnet sie mit einem IcsEventScanner
+     */
+    private IcsEventScanner scan(String content) throws IOException {
+        File file = File.createTempFile("feed", ".ics");
+        file.deleteOnExit();
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes(Charset.forName("UTF-8")));
+        out.close();
+
+        return new IcsEventScanner(file);
+    }
+
+    @Test
+    public void nextEventShouldSkipHeaderAndReturnEventsInOrder() throws IOException {
+        IcsEventScanner scanner = scan(FEED);
+
+        assertEquals("BEGIN:VEVENT\nSUMMARY:Übung\nEND:VEVENT\n", scanner.nextEvent());
+        assertEquals("BEGIN:VEVENT\nSUMMARY:Einsatz\nEND:VEVENT\n", scanner.nextEvent());
+        assertNull(scanner.nextEvent());
+        assertEquals(scanner.getSize(), scanner.getPosition());
+
+        scanner.close();
+    }
+
+    @Test
+    public void nextEventShouldReturnNullForEmptyFile() throws IOException {
+        IcsEventScanner scanner = scan("");
+        assertNull(scanner.nextEvent());
+        scanner.close();
+    }
+
+    @Test
+    public void nextEventShouldDropTruncatedLastEvent() throws IOException {
+        IcsEventScanner scanner = scan("BEGIN:VEVENT\nSUMMARY:Abgeschnitten");
+        assertNull(scanner.nextEvent());
+        assertFalse(scanner.isComplete());
+        scanner.close();
+    }
+
+    @Test
+    public void isCompleteShouldBeTrueAfterEndOfCalendar() throws IOException {
+        IcsEventScanner scanner = scan(FEED);
+        while (scanner.nextEvent() != null) {
+            // Alle Events lesen
+        }
+        assertTrue(scanner.isComplete());
+        scanner.close();
+    }
+
+    @Test
+    public void nextEventShouldUnfoldContinuationLines() throws IOException {
+        // Die Faltung liegt mitten in einem Umlaut (2 Byte in UTF-8)
+        byte[] umlaut = "ü".getBytes(Charset.forName("UTF-8"));
+        String folded = "BEGIN:VEVENT\r\nDESCRIPTION:Ausbildung " + new String(new byte[] {umlaut[0]}, Charset.forName("ISO-8859-1"))
+                + "\r\n " + new String(new byte[] {umlaut[1]}, Charset.forName("ISO-8859-1")) + "ber\r\n\t Tab\r\nEND:VEVENT\r\n";
+
+        File file = File.createTempFile("feed", ".ics");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(folded.getBytes(Charset.forName("ISO-8859-1")));
+        out.close();
+
+        IcsEventScanner scanner = new IcsEventScanner(file);
+        assertEquals("BEGIN:VEVENT\nDESCRIPTION:Ausbildung über Tab\nEND:VEVENT\n", scanner.nextEvent());
+        scanner.close();
+    }
+
+}
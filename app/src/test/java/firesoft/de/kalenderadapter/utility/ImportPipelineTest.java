@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import firesoft.de.kalenderadapter.data.CustomCalendarEntry;
+import firesoft.de.kalenderadapter.data.SyncHorizon;
+
+import static org.junit.Assert.*;
+
+public class ImportPipelineTest {
+
+    /**
+     * Erstellt eine ICS Datei mit der angegebenen Anzahl an Events. Mehr Events als in die Warteschlangen passen, damit die Stufen aufeinander warten müssen.
+     */
+    private String feed(int count) {
+        StringBuilder builder = new StringBuilder("BEGIN:VCALENDAR\n");
+
+        for (int i = 0; i < count; i++) {
+            builder.append("BEGIN:VEVENT\n")
+                    .append("UID:").append(i).append("\n")
+                    .append("SUMMARY:Übung ").append(i).append("\n")
+                    .append("STATUS:CONFIRMED\n")
+                    .append("DTSTART:20180424T190000Z\n")
+                    .append("DTEND:20180424T210000Z\n")
+                    .append("END:VEVENT\n");
+        }
+
+        return builder.append("END:VCALENDAR\n").toString();
+    }
+
+    @Test
+    public void runShouldDeliverEntriesInFeedOrder() throws Exception {
+        final ArrayList<String> uids = new ArrayList<>();
+
+        ImportPipeline pipeline = new ImportPipeline(new IcsEventReader(new StringReader(feed(500))), 1);
+
+        int processed = pipeline.run(new ImportPipeline.IEntryConsumer() {
+            @Override
+            public void accept(CustomCalendarEntry entry) {
+                uids.add(entry.getUid());
+            }
+        });
+
+        assertEquals(500, processed);
+        assertEquals(500, uids.size());
+
+        for (int i = 0; i < uids.size(); i++) {
+            assertEquals(String.valueOf(i), uids.get(i));
+        }
+    }
+
+    @Test
+    public void runShouldSkipEventsOutsideOfHorizon() throws Exception {
+        String events = feed(2).replace("UID:1\nSUMMARY:Übung 1\nSTATUS:CONFIRMED\nDTSTART:20180424T190000Z", "UID:1\nSUMMARY:Übung 1\nSTATUS:CONFIRMED\nDTSTART:20190424T190000Z");
+        final ArrayList<String> uids = new ArrayList<>();
+
+        // Nur 2019
+        SyncHorizon horizon = new SyncHorizon(1546300800000L, 1577836799000L);
+        ImportPipeline pipeline = new ImportPipeline(new IcsEventReader(new StringReader(events)), 1, horizon);
+
+        int processed = pipeline.run(new ImportPipeline.IEntryConsumer() {
+            @Override
+            public void accept(CustomCalendarEntry entry) {
+                uids.add(entry.getUid());
+            }
+        });
+
+        assertEquals(2, processed);
+        assertEquals(Arrays.asList("1"), uids);
+        assertEquals(Arrays.asList("0"), pipeline.getSkippedKeys());
+    }
+
+    @Test
+    public void runShouldSkipUnreadableEvents() throws Exception {
+        String events = feed(3).replace("UID:1\nSUMMARY:Übung 1\nSTATUS:CONFIRMED\nDTSTART:20180424T190000Z", "UID:1\nSUMMARY:Übung 1\nSTATUS:CONFIRMED\nDTSTART:kaputt");
+        final ArrayList<String> uids = new ArrayList<>();
+
+        ImportPipeline pipeline = new ImportPipeline(new IcsEventReader(new StringReader(events)), 1);
+
+        int processed = pipeline.run(new ImportPipeline.IEntryConsumer() {
+            @Override
+            public void accept(CustomCalendarEntry entry) {
+                uids.add(entry.getUid());
+            }
+        });
+
+        assertEquals(3, processed);
+        assertEquals(Arrays.asList("0", "2"), uids);
+        assertEquals(1, pipeline.getUnreadableCount());
+        assertEquals(Arrays.asList("1"), pipeline.getSkippedKeys());
+    }
+
+    @Test
+    public void runShouldStopWhenConsumerFails() {
+        ImportPipeline pipeline = new ImportPipeline(new IcsEventReader(new StringReader(feed(500))), 1);
+
+        try {
+            pipeline.run(new ImportPipeline.IEntryConsumer() {
+                @Override
+                public void accept(CustomCalendarEntry entry) throws Exception {
+                    throw new Exception("Schreiben fehlgeschlagen");
+                }
+            });
+            fail();
+        } catch (Exception e) {
+            assertEquals("Schreiben fehlgeschlagen", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class NormalizedHashInputStreamTest {
+
+    /**
+     * Liest den Inhalt komplett durch den Stream und gibt den Hashwert aus
+     */
+    private long hash(String content) throws IOException {
+        NormalizedHashInputStream in = new NormalizedHashInputStream(new ByteArrayInputStream(content.getBytes(Charset.forName("UTF-8"))));
+
+        byte[] buffer = new byte[7];
+        while (in.read(buffer) != -1) {
+            // Nur lesen
+        }
+
+        return in.getHash();
+    }
+
+    @Test
+    public void isCompleteShouldOnlyBeTrueAtEndOfStream() throws IOException {
+        NormalizedHashInputStream in = new NormalizedHashInputStream(new ByteArrayInputStream("SUMMARY:Übung\r\n".getBytes(Charset.forName("UTF-8"))));
+
+        byte[] buffer = new byte[4];
+        assertEquals(4, in.read(buffer));
+        assertFalse(in.isComplete());
+
+        while (in.read(buffer) != -1) {
+            // Nur lesen
+        }
+
+        assertTrue(in.isComplete());
+    }
+
+    @Test
+    public void hashShouldIgnoreTimestamps() throws IOException {
+        assertEquals(
+                hash("BEGIN:VEVENT\r\nDTSTAMP:20190101T000000Z\r\nSUMMARY:Übung\r\nEND:VEVENT\r\n"),
+                hash("BEGIN:VEVENT\r\nDTSTAMP;VALUE=DATE-TIME:20190102T030000Z\r\nSUMMARY:Übung\r\nEND:VEVENT\r\n"));
+    }
+
+    @Test
+    public void hashShouldIgnoreLineEndingsAndFolding() throws IOException {
+        assertEquals(
+                hash("BEGIN:VEVENT\r\nDESCRIPTION:Eine lange Beschreibung\r\nEND:VEVENT\r\n"),
+                hash("BEGIN:VEVENT\nDESCRIPTION:Eine lange\n  Beschreibung\nEND:VEVENT"));
+    }
+
+    @Test
+    public void hashShouldDetectChangedContent() throws IOException {
+        assertNotEquals(
+                hash("BEGIN:VEVENT\r\nSUMMARY:Übung\r\nEND:VEVENT\r\n"),
+                hash("BEGIN:VEVENT\r\nSUMMARY:Einsatz\r\nEND:VEVENT\r\n"));
+
+        // DTSTART ist kein Zeitstempel des Abrufs und muss berücksichtigt werden
+        assertNotEquals(
+                hash("BEGIN:VEVENT\r\nDTSTART:20190101T190000Z\r\nEND:VEVENT\r\n"),
+                hash("BEGIN:VEVENT\r\nDTSTART:20190102T190000Z\r\nEND:VEVENT\r\n"));
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2019.  David Schlossarczyk
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For the full license visit https://www.gnu.org/licenses/gpl-3.0.
+ */
+
+package firesoft.de.kalenderadapter.utility;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import firesoft.de.kalenderadapter.data.CustomCalendarEntry;
+import firesoft.de.kalenderadapter.data.SyncState;
+
+import static org.junit.Assert.*;
+
+public class SyncDiffTest {
+
+    /**
+     * Erstellt einen Eintrag wie er aus dem Kalender gelesen wird (EntryID = ID des Events)
+     */
+    private CustomCalendarEntry existing(int eventId, String uid, String title, long start) {
+        CustomCalendarEntry entry = new CustomCalendarEntry();
+        entry.setEntryID(eventId);
+        entry.setUid(uid);
+        entry.setTitle(title);
+        entry.setStartMillis(start);
+        entry.setEndMillis(start + 3600000);
+        entry.setDescription("Beschreibung");
+        entry.setLocation("Gerätehaus");
+        entry.setTimezone("Europe/Berlin");
+        return entry;
+    }
+
+    /**
+     * Erstellt einen Eintrag wie er aus der ICS Datei gelesen wird (EntryID = ID des Kalenders)
+     */
+    private CustomCalendarEntry incoming(String uid, String title, long start, int sequence) {
+        CustomCalendarEntry entry = existing(1, uid, title, start);
+        entry.setSequence(sequence);
+        return entry;
+    }
+
+    @Test
+    public void computeShouldOnlyReportChanges() {
+        SyncDiff diff = new SyncDiff(Arrays.asList(
+                existing(10, "a", "Übung", 1000),
+                existing(11, "b", "Einsatz", 2000),
+                existing(12, "c", "Lehrgang", 3000)));
+
+        diff.offer(incoming("a", "Übung", 1000, 0));
+        diff.offer(incoming("b", "Einsatz verschoben", 2000, 1));
+        diff.offer(incoming("d", "Neu", 4000, 0));
+        diff.compute();
+
+        assertEquals(1, diff.getUnchangedCount());
+        assertEquals(1, diff.getInserts().size());
+        assertEquals("d", diff.getInserts().get(0).getUid());
+        assertEquals(1, diff.getUpdates().size());
+        assertEquals("Einsatz verschoben", diff.getUpdates().get(11).getTitle());
+        assertEquals(Arrays.asList(12), diff.getDeletes());
+    }
+
+    @Test
+    public void offerShouldKeepNewestVersionOfDuplicateUid() {
+        SyncDiff diff = new SyncDiff(Arrays.asList(existing(10, "a", "Übung", 1000)));
+
+        diff.offer(incoming("a", "Version 2", 1000, 2));
+        diff.offer(incoming("a", "Version 1", 1000, 1));
+        diff.compute();
+
+        assertEquals("Version 2", diff.getUpdates().get(10).getTitle());
+        assertTrue(diff.getInserts().isEmpty());
+    }
+
+    @Test
+    public void offerShouldUseLastModifiedWhenSequenceIsEqual() {
+        SyncDiff diff = new SyncDiff(new ArrayList<CustomCalendarEntry>());
+
+        CustomCalendarEntry older = incoming("a", "Alt", 1000, 0);
+        older.setLastModified(5000);
+        CustomCalendarEntry newer = incoming("a", "Neu", 1000, 0);
+        newer.setLastModified(6000);
+
+        diff.offer(newer);
+        diff.offer(older);
+        diff.compute();
+
+        assertEquals(1, diff.getInserts().size());
+        assertEquals("Neu", diff.getInserts().get(0).getTitle());
+    }
+
+    @Test
+    public void computeShouldAdoptEntriesCreatedWithoutUid() {
+        SyncDiff diff = new SyncDiff(Arrays.asList(existing(10, null, "Übung", 1000)));
+
+        diff.offer(incoming("a", "Übung", 1000, 0));
+        diff.compute();
+
+        // Der bestehende Eintrag wird aktualisiert, damit die UID gespeichert wird
+        assertTrue(diff.getInserts().isEmpty());
+        assertTrue(diff.getDeletes().isEmpty());
+        assertEquals("a", diff.getUpdates().get(10).getUid());
+    }
+
+    @Test
+    public void computeShouldDeleteDuplicatesInCalendar() {
+        SyncDiff diff = new SyncDiff(Arrays.asList(existing(10, "a", "Übung", 1000), existing(11, "a", "Übung", 1000)));
+
+        diff.offer(incoming("a", "Übung", 1000, 0));
+        diff.compute();
+
+        assertEquals(1, diff.getDeletes().size());
+        assertEquals(1, diff.getUnchangedCount());
+    }
+
+    @Test
+    public void fromSyncStatesShouldCompareContentHashes() {
+        CustomCalendarEntry unchanged = incoming("a", "Übung", 1000, 0);
+        CustomCalendarEntry changed = incoming("b", "Einsatz", 2000, 0);
+
+        SyncDiff diff = SyncDiff.fromSyncStates(Arrays.asList(
+                new SyncState("a", 10, unchanged.getContentHash(), 1),
+                new SyncState("b", 11, changed.getContentHash(), 1),
+                new SyncState("c", 12, 0, 1)));
+
+        changed.setLocation("Wache");
+
+        diff.offer(unchanged);
+        diff.offer(changed);
+        diff.compute();
+
+        assertEquals(Arrays.asList("a"), diff.getUnchangedKeys());
+        assertEquals("Wache", diff.getUpdates().get(11).getLocation());
+        assertEquals(Arrays.asList(12), diff.getDeletes());
+        assertEquals(Arrays.asList("c"), diff.getDeletedKeys());
+    }
+
+    @Test
+    public void retainShouldKeepEntriesOutsideOfHorizon() {
+        SyncDiff diff = SyncDiff.fromSyncStates(Arrays.asList(
+                new SyncState("alt", 10, 0, 1),
+                new SyncState("entfernt", 11, 0, 1)));
+
+        diff.retain(Arrays.asList("alt"));
+        diff.compute();
+
+        assertEquals(Arrays.asList("alt"), diff.getUnchangedKeys());
+        assertEquals(Arrays.asList(11), diff.getDeletes());
+    }
+
+    @Test
+    public void unchangedStatesOfScanShouldPreventInsertsOnNextSync() {
+        SyncDiff scan = new SyncDiff(Arrays.asList(
+                existing(10, "a", "Übung", 1000),
+                existing(11, "b", "Einsatz", 2000)));
+
+        scan.offer(incoming("a", "Übung", 1000, 0));
+        scan.offer(incoming("b", "Einsatz", 2000, 0));
+        scan.compute();
+
+        assertTrue(scan.getInserts().isEmpty());
+        assertEquals(2, scan.getUnchangedStates().size());
+
+        // Wie nach SyncStateManager.store() und load()
+        SyncDiff next = SyncDiff.fromSyncStates(scan.getUnchangedStates());
+
+        next.offer(incoming("a", "Übung", 1000, 0));
+        next.offer(incoming("b", "Einsatz", 2000, 0));
+        next.compute();
+
+        assertTrue(next.getInserts().isEmpty());
+        assertTrue(next.getUpdates().isEmpty());
+        assertTrue(next.getDeletes().isEmpty());
+        assertEquals(2, next.getUnchangedCount());
+    }
+
+    @Test
+    public void existingStatesOfScanShouldContainEventIds() {
+        SyncDiff scan = new SyncDiff(Arrays.asList(
+                existing(10, "a", "Übung", 1000),
+                existing(11, "b", "Einsatz", 2000),
+                existing(12, null, "Lehrgang", 3000)));
+
+        ArrayList<SyncState> states = scan.getExistingStates();
+
+        // Einträge ohne UID können nicht zugeordnet werden und bleiben für den Abgleich über den Inhalt im Kalender
+        assertEquals(2, states.size());
+
+        // Wie nach SyncStateManager.replace() und load()
+        SyncDiff next = SyncDiff.fromSyncStates(states);
+
+        next.offer(incoming("a", "Übung", 1000, 0));
+        next.offer(incoming("b", "Einsatz verschoben", 2000, 1));
+        next.compute();
+
+        assertTrue(next.getInserts().isEmpty());
+        assertEquals(Arrays.asList("a"), next.getUnchangedKeys());
+        assertEquals("Einsatz verschoben", next.getUpdates().get(11).getTitle());
+    }
+
+    @Test
+    public void keepMissingShouldNotDeleteEntriesMissingInFeed() {
+        SyncDiff diff = new SyncDiff(Arrays.asList(
+                existing(10, "a", "Übung", 1000),
+                existing(11, "b", "Einsatz", 2000),
+                existing(12, null, "Lehrgang", 3000)));
+
+        diff.offer(incoming("a", "Übung verschoben", 1500, 1));
+        diff.keepMissing();
+        diff.compute();
+
+        assertEquals(1, diff.getUpdates().size());
+        assertTrue(diff.getDeletes().isEmpty());
+        assertTrue(diff.getDeletedKeys().isEmpty());
+        assertEquals(Arrays.asList("b"), diff.getUnchangedKeys());
+    }
+
+    @Test
+    public void computeShouldMatchEventsWithoutUidByContent() {
+        CustomCalendarEntry first = incoming(null, "Übung", 1000, 0);
+
+        SyncDiff diff = SyncDiff.fromSyncStates(Arrays.asList(new SyncState(first.getSyncKey(), 10, first.getContentHash(), 1)));
+
+        diff.offer(incoming(null, "Übung", 1000, 0));
+        diff.compute();
+
+        assertEquals(1, diff.getUnchangedCount());
+        assertTrue(diff.getInserts().isEmpty());
+    }
+
+    @Test
+    public void computeShouldKeepRecurrenceInstancesApart() {
+        SyncDiff diff = new SyncDiff(new ArrayList<CustomCalendarEntry>());
+
+        CustomCalendarEntry instance = incoming("a", "Übung", 2000, 0);
+        instance.setRecurrenceId("20180424T190000");
+
+        diff.offer(incoming("a", "Übung", 1000, 0));
+        diff.offer(instance);
+        diff.compute();
+
+        assertEquals(2, diff.getInserts().size());
+    }
+
+}